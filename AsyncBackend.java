@@ -0,0 +1,82 @@
+package SadSystem;
+
+import javax.swing.SwingUtilities;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * Runs BackendService calls off the Event Dispatch Thread. Every call runs
+ * on a managed executor (virtual threads when the runtime has them) and the
+ * returned future is completed on the EDT, so its callbacks can touch
+ * Swing components directly. A call that throws completes the future
+ * exceptionally; callers that must recover, e.g. re-enable a button, use
+ * {@code whenComplete}.
+ *
+ * {@link #latest} keys a call by its caller: starting a new call for the
+ * same key cancels the previous one, and a cancelled call never delivers
+ * its result, so a panel only ever renders its newest request.
+ */
+public class AsyncBackend {
+
+    private static class Holder {
+        static final AsyncBackend INSTANCE = new AsyncBackend(BackendService.getInstance());
+    }
+
+    private final BackendService backend;
+    private final ExecutorService executor;
+    private final Map<Object, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+
+    private AsyncBackend(BackendService backend) {
+        this.backend = backend;
+        this.executor = createExecutor();
+    }
+
+    public static AsyncBackend getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    public <T> CompletableFuture<T> call(Function<BackendService, T> work) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        executor.execute(() -> {
+            if (result.isDone()) {
+                return;
+            }
+            try {
+                T value = work.apply(backend);
+                SwingUtilities.invokeLater(() -> result.complete(value));
+            } catch (Throwable t) {
+                SwingUtilities.invokeLater(() -> result.completeExceptionally(t));
+            }
+        });
+        return result;
+    }
+
+    public <T> CompletableFuture<T> latest(Object key, Function<BackendService, T> work) {
+        CompletableFuture<T> result = call(work);
+        CompletableFuture<?> previous = inFlight.put(key, result);
+        if (previous != null) {
+            previous.cancel(false);
+        }
+        result.whenComplete((value, error) -> inFlight.remove(key, result));
+        return result;
+    }
+
+    private static ExecutorService createExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            AtomicInteger count = new AtomicInteger();
+            int threads = Math.max(2, Runtime.getRuntime().availableProcessors());
+            return Executors.newFixedThreadPool(threads, r -> {
+                Thread t = new Thread(r, "backend-" + count.incrementAndGet());
+                t.setDaemon(true);
+                return t;
+            });
+        }
+    }
+}
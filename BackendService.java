@@ -1,31 +1,146 @@
 package SadSystem;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.SecureRandom;
 import java.util.*;
-import java.util.stream.Collectors;
-
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.StampedLock;
+import java.util.zip.CRC32;
+
+/**
+ * In-memory backend shared by every panel. Users, the product catalog and
+ * orders are each guarded by their own StampedLock so the three domains do
+ * not contend with each other. Writers take the write lock of the domain
+ * they change; when an operation needs both the catalog and the orders, the
+ * catalog lock is always taken first. Scalar counters are read
+ * optimistically and the ordered order map is a lock-free skip list, so
+ * dashboard reads never block behind a writer.
+ *
+ * Stock movements (orders, restocks) only hold the catalog read lock and
+ * change quantities with a compare-and-set on each product, so orders on
+ * different products never serialize. Structural catalog changes and
+ * absolute quantity edits take the write lock and so exclude them.
+ *
+ * When the {@code ims.data.dir} system property is set, every mutation is
+ * also written through to a {@link StorageEngine} in that directory as a
+ * {@link WriteBatch} (while the domain lock is still held, so the engine
+ * sees changes in apply order) and the call waits for it to become durable
+ * after releasing the lock. {@code ims.storage} picks the engine and
+ * {@code ims.durability} the mode (per-op, batched or async); startup
+ * loads the indexes from the engine. Without a data directory the sample
+ * data is loaded instead.
+ *
+ * With a data directory, completed and cancelled orders older than
+ * {@code ims.archive.afterDays} are periodically moved to an
+ * {@link OrderArchive} and leave the hot indexes, so the order list,
+ * search and dashboard only cover the working set. Lookups by id, date
+ * range or product and the order total also consult the archive.
+ *
+ * Catalog and order mutations are also published to a {@link ChangeFeed},
+ * with or without a data directory, so downstream systems can follow
+ * changes instead of re-reading everything.
+ */
 public class BackendService {
 
-    private static BackendService instance;
-
     private final List<User> users;
+    private final Map<String, User> usersByName;
+    private final Map<String, User> usersByEmail;
     private final List<Product> products;
-    private final List<Order> orders;
-    private User currentUser;
-    private static final int LOW_STOCK_THRESHOLD = 5;
+    private final IntHashMap<Product> productsById;
+    private final Map<String, Product> productsByName;
+    private final NGramIndex<Product> productNameIndex;
+    private final ConcurrentSkipListMap<OrderKey, Order> orders;
+    private final ConcurrentHashMap<Long, Order> ordersById;
+    private final IntHashMap<Set<Order>> ordersByProduct;
+    private final NGramIndex<String> customerNameIndex;
+    private final Map<String, Set<Order>> ordersByCustomer;
+    private volatile boolean orderIndexesBuilt = true;
+    private final ConcurrentHashMap<String, Session> sessions;
+    private final SecureRandom tokenSource;
+    private final ConcurrentSkipListSet<StockLevel> lowStock;
+    private final AtomicInteger lowStockCount;
+    private final ProductColumns productColumns;
+    private final AtomicLong totalInStock;
+    private int productCount;
+    private long nextCatalogPosition;
+    private int orderCount;
+    private final StampedLock userLock = new StampedLock();
+    private final StampedLock catalogLock = new StampedLock();
+    private final StampedLock orderLock = new StampedLock();
+    private static final int DEFAULT_REORDER_THRESHOLD = 5;
+    private static final long SESSION_IDLE_TIMEOUT_MS = TimeUnit.MINUTES.toMillis(30);
+    private static final int ARCHIVE_BLOCK_ORDERS = 50_000;
+    // Ids are leased 64 at a time. Orders are created in bulk and their ids are long, so they reserve further ahead.
+    private static final long PRODUCT_ID_RESERVE_STEP = 4 * 64;
+    private static final long ORDER_ID_RESERVE_STEP = 64 * 64;
+    private static final int ID_FILE_MAGIC = 0x494D5349;
+    private final StorageEngine storage;
+    private final OrderArchive archive;
+    private final Path idFile;
+    private final long[] idReservations = new long[2];
+    private final AtomicBoolean archiveRunning = new AtomicBoolean();
+    private final ChangeFeed changeFeed = new ChangeFeed(Integer.getInteger("ims.cdc.capacity", 1 << 16));
 
     private BackendService() {
         users = new ArrayList<>();
+        usersByName = new HashMap<>();
+        usersByEmail = new HashMap<>();
         products = new ArrayList<>();
-        orders = new ArrayList<>();
-        currentUser = null;
-        initializeSampleData();
+        productsById = new IntHashMap<>();
+        productsByName = new HashMap<>();
+        // Ids come from per-thread stripes, so hits are put back in catalog order rather than id order.
+        productNameIndex = new NGramIndex<>(Comparator.comparingLong(product -> product.catalogPosition));
+        lowStock = new ConcurrentSkipListSet<>();
+        lowStockCount = new AtomicInteger();
+        totalInStock = new AtomicLong();
+        productColumns = new ProductColumns();
+        orders = new ConcurrentSkipListMap<>();
+        ordersById = new ConcurrentHashMap<>();
+        ordersByProduct = new IntHashMap<>();
+        customerNameIndex = new NGramIndex<>(Comparator.naturalOrder());
+        ordersByCustomer = new HashMap<>();
+        sessions = new ConcurrentHashMap<>();
+        tokenSource = new SecureRandom();
+        Path dataDir = dataDirectory();
+        storage = dataDir != null ? openStorage(dataDir) : null;
+        archive = dataDir != null ? openArchive(dataDir) : null;
+        idFile = dataDir != null ? dataDir.resolve("ids.dat") : null;
+        if (storage == null) {
+            initializeSampleData();
+        } else {
+            recover();
+            reconcileArchive();
+            reserveIds();
+            startArchiver();
+        }
+        startSessionSweeper();
+    }
+
+    private static class Holder {
+        static final BackendService INSTANCE = new BackendService();
     }
 
     public static BackendService getInstance() {
-        if (instance == null) {
-            instance = new BackendService();
-        }
-        return instance;
+        return Holder.INSTANCE;
     }
 
     public boolean registerUser(String username, String password, String email) {
@@ -39,40 +154,66 @@ public class BackendService {
             return false;
         }
 
-        if (users.stream().anyMatch(u -> u.getUsername().equalsIgnoreCase(username))) {
-            return false;
-        }
-        if (users.stream().anyMatch(u -> u.getEmail().equalsIgnoreCase(email))) {
-            return false;
-        }
+        long stamp = userLock.writeLock();
+        try {
+            if (usersByName.containsKey(lookupKey(username))) {
+                return false;
+            }
+            if (usersByEmail.containsKey(lookupKey(email))) {
+                return false;
+            }
 
-        User newUser = new User(username, password, email);
-        users.add(newUser);
-        return true;
+            User user = new User(username, password, email);
+            storeUser(user);
+            if (storage != null) {
+                storage.write(new WriteBatch().user(username, user));
+            }
+            return true;
+        } finally {
+            userLock.unlockWrite(stamp);
+            awaitDurable();
+        }
     }
 
-    public boolean login(String username, String password) {
+    public Session login(String username, String password) {
         if (username == null || password == null) {
-            return false;
+            return null;
         }
 
-        Optional<User> userOpt = users.stream()
-            .filter(u -> u.getUsername().equalsIgnoreCase(username) && u.getPassword().equals(password))
-            .findFirst();
+        User user = getUserByUsername(username);
+        if (user != null && user.getPassword().equals(password)) {
+            byte[] bytes = new byte[24];
+            tokenSource.nextBytes(bytes);
+            Session session = new Session(Base64.getUrlEncoder().withoutPadding().encodeToString(bytes), user);
+            sessions.put(session.getToken(), session);
+            return session;
+        }
+        return null;
+    }
 
-        if (userOpt.isPresent()) {
-            currentUser = userOpt.get();
-            return true;
+    public void logout(Session session) {
+        if (session != null) {
+            sessions.remove(session.getToken(), session);
         }
-        return false;
     }
 
-    public void logout() {
-        currentUser = null;
+    public Session getSession(String token) {
+        if (token == null) {
+            return null;
+        }
+        Session session = sessions.get(token);
+        return session != null && isLive(session) ? session : null;
     }
 
-    public User getCurrentUser() {
-        return currentUser;
+    public User getCurrentUser(Session session) {
+        if (session == null || sessions.get(session.getToken()) != session || !isLive(session)) {
+            return null;
+        }
+        return session.getUser();
+    }
+
+    public int getActiveSessionCount() {
+        return sessions.size();
     }
 
     public boolean requestPasswordReset(String email) {
@@ -80,120 +221,250 @@ public class BackendService {
             return false;
         }
 
-        return users.stream().anyMatch(u -> u.getEmail().equalsIgnoreCase(email));
+        long stamp = userLock.readLock();
+        try {
+            return usersByEmail.containsKey(lookupKey(email));
+        } finally {
+            userLock.unlockRead(stamp);
+        }
     }
 
-    public boolean updateUserProfile(String username, String phone, String email, String oldPassword, String newPassword) {
-        if (currentUser == null) {
+    public boolean updateUserProfile(Session session, String username, String phone, String email, String oldPassword, String newPassword) {
+        User user = getCurrentUser(session);
+        if (user == null) {
             return false;
         }
-        if (newPassword != null && !newPassword.isEmpty()) {
-            if (oldPassword == null || !currentUser.getPassword().equals(oldPassword)) {
-                return false;
-            }
-            if (newPassword.length() < 3) {
-                return false;
+        long stamp = userLock.writeLock();
+        String previousName = user.getUsername();
+        try {
+            if (newPassword != null && !newPassword.isEmpty()) {
+                if (oldPassword == null || !user.getPassword().equals(oldPassword)) {
+                    return false;
+                }
+                if (newPassword.length() < 3) {
+                    return false;
+                }
             }
-        }
-        if (username != null && !username.trim().isEmpty()) {
-            if (users.stream().anyMatch(u -> !u.equals(currentUser) && u.getUsername().equalsIgnoreCase(username))) {
-                return false;
+            if (username != null && !username.trim().isEmpty()) {
+                User existing = usersByName.get(lookupKey(username));
+                if (existing != null && existing != user) {
+                    return false;
+                }
+                usersByName.remove(lookupKey(user.getUsername()));
+                user.setUsername(username);
+                usersByName.put(lookupKey(username), user);
             }
-            currentUser.setUsername(username);
-        }
 
-        if (phone != null) {
-            currentUser.setPhone(phone);
-        }
+            if (phone != null) {
+                user.setPhone(phone);
+            }
 
-        if (email != null && isValidEmail(email)) {
-            if (users.stream().anyMatch(u -> !u.equals(currentUser) && u.getEmail().equalsIgnoreCase(email))) {
-                return false;
+            if (email != null && isValidEmail(email)) {
+                User existing = usersByEmail.get(lookupKey(email));
+                if (existing != null && existing != user) {
+                    return false;
+                }
+                usersByEmail.remove(lookupKey(user.getEmail()));
+                user.setEmail(email);
+                usersByEmail.put(lookupKey(email), user);
             }
-            currentUser.setEmail(email);
-        }
 
-        if (newPassword != null && !newPassword.isEmpty()) {
-            currentUser.setPassword(newPassword);
+            if (newPassword != null && !newPassword.isEmpty()) {
+                user.setPassword(newPassword);
+            }
+            return true;
+        } finally {
+            // Logged on every exit: an email clash can fail after the username already changed.
+            if (storage != null) {
+                storage.write(new WriteBatch().user(previousName, user));
+            }
+            userLock.unlockWrite(stamp);
+            awaitDurable();
         }
-        return true;
     }
 
     public User getUserByUsername(String username) {
-        return users.stream()
-            .filter(u -> u.getUsername().equalsIgnoreCase(username))
-            .findFirst()
-            .orElse(null);
+        if (username == null) {
+            return null;
+        }
+        long stamp = userLock.readLock();
+        try {
+            return usersByName.get(lookupKey(username));
+        } finally {
+            userLock.unlockRead(stamp);
+        }
     }
 
     public boolean addProduct(String name, double price, int quantity) {
-        if (name == null || name.trim().isEmpty()) {
+        if (validateProduct(name, price, quantity) != null) {
             return false;
         }
+
+        long stamp = catalogLock.writeLock();
+        try {
+            if (productsByName.containsKey(lookupKey(name))) {
+                return false;
+            }
+
+            Product product = new Product(name, price, quantity);
+            storeProduct(product);
+            commit(new WriteBatch().product(product));
+            return true;
+        } finally {
+            catalogLock.unlockWrite(stamp);
+            awaitDurable();
+        }
+    }
+
+    /**
+     * Returns why a product with these values would be refused by
+     * {@link #addProduct}, or null if it is acceptable.
+     */
+    public static String validateProduct(String name, double price, int quantity) {
+        if (name == null || name.trim().isEmpty()) {
+            return "Product name is required";
+        }
+        if (!Double.isFinite(price)) {
+            return "Price must be a finite number";
+        }
         if (price < 0) {
-            return false;
+            return "Price must not be negative";
         }
         if (quantity < 0) {
-            return false;
+            return "Quantity must not be negative";
         }
+        return null;
+    }
 
-        if (products.stream().anyMatch(p -> p.getName().equalsIgnoreCase(name))) {
-            return false;
+    /**
+     * Inserts or updates a batch of products by name under one catalog
+     * write lock. A product that already exists (case-insensitively) takes
+     * the row's price and quantity; otherwise a new product is added. Rows
+     * that fail {@link #validateProduct} are skipped. Returns how many
+     * products were created.
+     */
+    public int upsertProducts(List<ProductUpsert> rows) {
+        int created = 0;
+        WriteBatch entry = new WriteBatch();
+        long stamp = catalogLock.writeLock();
+        try {
+            for (ProductUpsert row : rows) {
+                if (validateProduct(row.getName(), row.getPrice(), row.getQuantity()) != null) {
+                    continue;
+                }
+                Product product = productsByName.get(lookupKey(row.getName()));
+                if (product == null) {
+                    product = new Product(row.getName(), row.getPrice(), row.getQuantity());
+                    storeProduct(product);
+                    created++;
+                } else {
+                    repriceProduct(product, row.getPrice());
+                    restockProduct(product, row.getQuantity());
+                }
+                entry.product(product);
+            }
+            commit(entry);
+            return created;
+        } finally {
+            catalogLock.unlockWrite(stamp);
+            awaitDurable();
         }
-
-        Product product = new Product(name, price, quantity);
-        products.add(product);
-        return true;
     }
 
     public boolean updateProduct(int productId, String name, Double price, Integer quantity) {
-        Product product = getProductById(productId);
-        if (product == null) {
+        return updateProduct(productId, name, price, quantity, null);
+    }
+
+    /**
+     * Applies an edit and, unless it is null, a new reorder threshold in
+     * one change. A negative threshold is refused before anything changes.
+     */
+    public boolean updateProduct(int productId, String name, Double price, Integer quantity,
+                                 Integer reorderThreshold) {
+        if (reorderThreshold != null && reorderThreshold < 0) {
             return false;
         }
-
-        if (name != null && !name.trim().isEmpty()) {
-            if (products.stream().anyMatch(p -> p.getId() != productId && p.getName().equalsIgnoreCase(name))) {
+        long stamp = catalogLock.writeLock();
+        try {
+            Product product = productsById.get(productId);
+            if (product == null) {
                 return false;
             }
-            product.setName(name);
-        }
 
-        if (price != null && price >= 0) {
-            product.setPrice(price);
-        }
+            if (name != null && !name.trim().isEmpty()) {
+                Product existing = productsByName.get(lookupKey(name));
+                if (existing != null && existing != product) {
+                    return false;
+                }
+                renameProduct(product, name);
+            }
+
+            if (price != null && price >= 0) {
+                repriceProduct(product, price);
+            }
 
-        if (quantity != null && quantity >= 0) {
-            product.setQuantity(quantity);
+            if (quantity != null && quantity >= 0) {
+                restockProduct(product, quantity);
+            }
+
+            if (reorderThreshold != null) {
+                applyReorderThreshold(product, reorderThreshold);
+            }
+            commit(new WriteBatch().product(product));
+            return true;
+        } finally {
+            catalogLock.unlockWrite(stamp);
+            awaitDurable();
         }
-        return true;
     }
 
     public boolean deleteProduct(int productId) {
-        Product product = getProductById(productId);
-        if (product == null) {
-            return false;
+        long stamp = catalogLock.writeLock();
+        try {
+            Product product = productsById.get(productId);
+            if (product == null) {
+                return false;
+            }
+            if (getOrderCountForProduct(productId) > 0) {
+                return false;
+            }
+            removeProduct(product);
+            commit(new WriteBatch().productDeleted(productId));
+            return true;
+        } finally {
+            catalogLock.unlockWrite(stamp);
+            awaitDurable();
         }
-        boolean hasOrders = orders.stream()
-            .anyMatch(o -> o.getItems().stream()
-                .anyMatch(oi -> oi.getProductId() == productId));
+    }
 
-        if (hasOrders) {
-            return false;
+    public Product getProductById(int id) {
+        long stamp = catalogLock.readLock();
+        try {
+            return productsById.get(id);
+        } finally {
+            catalogLock.unlockRead(stamp);
         }
-        products.remove(product);
-        return true;
     }
 
-    public Product getProductById(int id) {
-        return products.stream()
-            .filter(p -> p.getId() == id)
-            .findFirst()
-            .orElse(null);
+    public Product getProductByName(String name) {
+        if (name == null) {
+            return null;
+        }
+        long stamp = catalogLock.readLock();
+        try {
+            return productsByName.get(lookupKey(name));
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
     }
 
     public List<Product> getAllProducts() {
-        return new ArrayList<>(products);
+        long stamp = catalogLock.readLock();
+        try {
+            return new ArrayList<>(products);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
     }
 
     public List<Product> searchProducts(String query) {
@@ -201,16 +472,39 @@ public class BackendService {
             return getAllProducts();
         }
 
-        String lowerQuery = query.toLowerCase();
-        return products.stream()
-            .filter(p -> p.getName().toLowerCase().contains(lowerQuery))
-            .collect(Collectors.toList());
+        long stamp = catalogLock.readLock();
+        try {
+            return productNameIndex.search(query);
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
     }
 
     public List<Product> getLowStockProducts() {
-        return products.stream()
-            .filter(p -> p.getQuantity() <= LOW_STOCK_THRESHOLD)
-            .collect(Collectors.toList());
+        List<Product> result = new ArrayList<>();
+        for (StockLevel level : lowStock) {
+            result.add(level.product);
+        }
+        return result;
+    }
+
+    public boolean setReorderThreshold(int productId, int threshold) {
+        if (threshold < 0) {
+            return false;
+        }
+        long stamp = catalogLock.writeLock();
+        try {
+            Product product = productsById.get(productId);
+            if (product == null) {
+                return false;
+            }
+            applyReorderThreshold(product, threshold);
+            commit(new WriteBatch().product(product));
+            return true;
+        } finally {
+            catalogLock.unlockWrite(stamp);
+            awaitDurable();
+        }
     }
 
     public boolean isProductInStock(int productId, int quantity) {
@@ -219,13 +513,19 @@ public class BackendService {
     }
 
     public boolean reduceProductStock(int productId, int quantity) {
-        Product product = getProductById(productId);
-        if (product == null || product.getQuantity() < quantity) {
-            return false;
+        long stamp = catalogLock.readLock();
+        try {
+            Product product = productsById.get(productId);
+            if (product == null || !product.reserve(quantity)) {
+                return false;
+            }
+            stockChanged(product, -quantity);
+            commit(new WriteBatch().stock(productId, -quantity));
+            return true;
+        } finally {
+            catalogLock.unlockRead(stamp);
+            awaitDurable();
         }
-
-        product.setQuantity(product.getQuantity() - quantity);
-        return true;
     }
 
     public Order createOrder(String customerName, List<OrderItem> items) {
@@ -236,30 +536,161 @@ public class BackendService {
             return null;
         }
 
-        for (OrderItem item : items) {
-            if (!isProductInStock(item.getProductId(), item.getQuantity())) {
+        long catalogStamp = catalogLock.readLock();
+        try {
+            Map<Product, Integer> demand = new LinkedHashMap<>();
+            for (OrderItem item : items) {
+                Product product = productsById.get(item.getProductId());
+                if (product == null || item.getQuantity() < 0) {
+                    return null;
+                }
+                demand.merge(product, item.getQuantity(), Integer::sum);
+            }
+            if (!reserveAll(demand)) {
                 return null;
             }
+
+            Order order;
+            long orderStamp = orderLock.writeLock();
+            try {
+                order = new Order(customerName, priceItems(items));
+                storeOrder(order);
+                commit(new WriteBatch().stock(demand, -1).order(order));
+            } finally {
+                orderLock.unlockWrite(orderStamp);
+            }
+            return order;
+        } finally {
+            catalogLock.unlockRead(catalogStamp);
+            awaitDurable();
         }
+    }
 
-        Order order = new Order(customerName, items);
-        orders.add(order);
+    /**
+     * Creates a batch of orders under one catalog read lock. Each request is
+     * validated on its own, demand is added up per product, and the accepted
+     * requests' stock is reserved with one compare-and-set per product. A
+     * request is rejected with a reason instead of failing the whole batch.
+     * Results are returned in request order.
+     */
+    public List<OrderResult> createOrders(List<OrderRequest> requests) {
+        List<OrderResult> results = new ArrayList<>(Collections.nCopies(requests.size(), (OrderResult) null));
+        long catalogStamp = catalogLock.readLock();
+        try {
+            List<Integer> valid = new ArrayList<>();
+            List<Map<Product, Integer>> demands = new ArrayList<>();
+            for (int i = 0; i < requests.size(); i++) {
+                OrderRequest request = requests.get(i);
+                String reason = null;
+                Map<Product, Integer> demand = new LinkedHashMap<>();
+                if (request == null || request.getCustomerName() == null || request.getCustomerName().trim().isEmpty()) {
+                    reason = "Customer name is required";
+                } else if (request.getItems() == null || request.getItems().isEmpty()) {
+                    reason = "Order has no items";
+                } else {
+                    for (OrderItem item : request.getItems()) {
+                        Product product = productsById.get(item.getProductId());
+                        if (product == null) {
+                            reason = "Unknown product #" + item.getProductId();
+                            break;
+                        }
+                        if (item.getQuantity() < 0) {
+                            reason = "Invalid quantity for " + product.getName();
+                            break;
+                        }
+                        demand.merge(product, item.getQuantity(), Integer::sum);
+                    }
+                }
+                if (reason != null) {
+                    results.set(i, OrderResult.rejected(reason));
+                } else {
+                    valid.add(i);
+                    demands.add(demand);
+                }
+            }
 
-        for (OrderItem item : items) {
-            reduceProductStock(item.getProductId(), item.getQuantity());
+            List<Integer> accepted;
+            Map<Product, Integer> total;
+            while (true) {
+                accepted = new ArrayList<>();
+                Map<Product, Integer> remaining = new HashMap<>();
+                total = new LinkedHashMap<>();
+                for (int v = 0; v < valid.size(); v++) {
+                    Product shortOf = null;
+                    for (Map.Entry<Product, Integer> line : demands.get(v).entrySet()) {
+                        int left = remaining.computeIfAbsent(line.getKey(), Product::getQuantity);
+                        if (left < line.getValue()) {
+                            shortOf = line.getKey();
+                            break;
+                        }
+                    }
+                    if (shortOf != null) {
+                        results.set(valid.get(v), OrderResult.rejected("Insufficient stock for " + shortOf.getName()));
+                        continue;
+                    }
+                    for (Map.Entry<Product, Integer> line : demands.get(v).entrySet()) {
+                        remaining.merge(line.getKey(), -line.getValue(), Integer::sum);
+                        total.merge(line.getKey(), line.getValue(), Integer::sum);
+                    }
+                    accepted.add(v);
+                }
+                // A concurrent writer may have taken stock since it was read; plan again from fresh quantities.
+                if (reserveAll(total)) {
+                    break;
+                }
+            }
+
+            WriteBatch entry = new WriteBatch().stock(total, -1);
+            long orderStamp = orderLock.writeLock();
+            try {
+                for (int v : accepted) {
+                    OrderRequest request = requests.get(valid.get(v));
+                    Order order = new Order(request.getCustomerName(), priceItems(request.getItems()));
+                    storeOrder(order);
+                    results.set(valid.get(v), OrderResult.accepted(order));
+                    entry.order(order);
+                }
+                if (!accepted.isEmpty()) {
+                    commit(entry);
+                }
+            } finally {
+                orderLock.unlockWrite(orderStamp);
+            }
+            return results;
+        } finally {
+            catalogLock.unlockRead(catalogStamp);
+            awaitDurable();
         }
-        return order;
     }
 
-    public Order getOrderById(int id) {
-        return orders.stream()
-            .filter(o -> o.getId() == id)
-            .findFirst()
-            .orElse(null);
+    /** Looks in the hot orders first and falls back to the archive. */
+    public Order getOrderById(long id) {
+        Order order = ordersById.get(id);
+        if (order == null && archive != null) {
+            order = archive.find(id);
+        }
+        return order;
     }
 
     public List<Order> getAllOrders() {
-        return new ArrayList<>(orders);
+        return new ArrayList<>(orders.values());
+    }
+
+    public List<Order> getOrdersBetween(Date from, Date to) {
+        if (from == null || to == null || from.after(to)) {
+            return new ArrayList<>();
+        }
+        OrderKey low = new OrderKey(from.getTime(), Long.MIN_VALUE);
+        OrderKey high = new OrderKey(to.getTime(), Long.MAX_VALUE);
+        List<Order> result = new ArrayList<>(orders.subMap(low, true, high, true).values());
+        if (archive != null) {
+            List<Order> archived = archive.ordersBetween(from.getTime(), to.getTime());
+            if (!archived.isEmpty()) {
+                result.addAll(archived);
+                result.sort(Comparator.comparing(OrderKey::of));
+            }
+        }
+        return result;
     }
 
     public List<Order> searchOrders(String query) {
@@ -267,62 +698,718 @@ public class BackendService {
             return getAllOrders();
         }
 
-        String lowerQuery = query.toLowerCase();
-        return orders.stream()
-            .filter(o -> o.getCustomerName().toLowerCase().contains(lowerQuery))
-            .collect(Collectors.toList());
+        ensureOrderIndexes();
+        long stamp = orderLock.readLock();
+        try {
+            List<Order> result = new ArrayList<>();
+            for (String customerName : customerNameIndex.search(query)) {
+                result.addAll(ordersByCustomer.get(customerName));
+            }
+            result.sort(Comparator.comparing(OrderKey::of));
+            return result;
+        } finally {
+            orderLock.unlockRead(stamp);
+        }
     }
 
-    public boolean updateOrderStatus(int orderId, OrderStatus status) {
-        Order order = getOrderById(orderId);
-        if (order == null) {
-            return false;
+    /**
+     * Like {@link #searchOrders}, but also searches archived orders by
+     * customer name. This inflates the whole archive, so it is meant for
+     * explicit history lookups rather than the live order list.
+     */
+    public List<Order> searchOrderHistory(String query) {
+        List<Order> result = searchOrders(query);
+        if (archive != null) {
+            String needle = query == null ? "" : lookupKey(query.trim());
+            result.addAll(archive.matching(order -> lookupKey(order.getCustomerName()).contains(needle)));
+            result.sort(Comparator.comparing(OrderKey::of));
         }
-
-        order.setStatus(status);
-        return true;
+        return result;
     }
 
-    public boolean deleteOrder(int orderId) {
-        Order order = getOrderById(orderId);
-        if (order == null) {
-            return false;
+    public boolean updateOrderStatus(long orderId, OrderStatus status) {
+        long stamp = orderLock.writeLock();
+        try {
+            Order order = ordersById.get(orderId);
+            if (order == null) {
+                return false;
+            }
+
+            order.setStatus(status);
+            commit(new WriteBatch().orderStatus(orderId, status));
+            return true;
+        } finally {
+            orderLock.unlockWrite(stamp);
+            awaitDurable();
         }
-        for (OrderItem item : order.getItems()) {
-            Product product = getProductById(item.getProductId());
-            if (product != null) {
-                product.setQuantity(product.getQuantity() + item.getQuantity());
+    }
+
+    public boolean deleteOrder(long orderId) {
+        long catalogStamp = catalogLock.readLock();
+        try {
+            long orderStamp = orderLock.writeLock();
+            try {
+                Order order = ordersById.get(orderId);
+                if (order == null) {
+                    return false;
+                }
+                WriteBatch entry = new WriteBatch();
+                for (OrderItem item : order.items) {
+                    Product product = productsById.get(item.getProductId());
+                    if (product != null) {
+                        product.release(item.getQuantity());
+                        stockChanged(product, item.getQuantity());
+                        entry.stock(product.getId(), item.getQuantity());
+                    }
+                }
+                removeOrder(order);
+                commit(entry.orderDeleted(orderId));
+                return true;
+            } finally {
+                orderLock.unlockWrite(orderStamp);
             }
+        } finally {
+            catalogLock.unlockRead(catalogStamp);
+            awaitDurable();
         }
-        orders.remove(order);
-        return true;
+    }
+
+    public int getOrderCountForProduct(int productId) {
+        ensureOrderIndexes();
+        long stamp = orderLock.readLock();
+        try {
+            Set<Order> productOrders = ordersByProduct.get(productId);
+            int count = productOrders == null ? 0 : productOrders.size();
+            return archive == null ? count : count + archive.countForProduct(productId);
+        } finally {
+            orderLock.unlockRead(stamp);
+        }
+    }
+
+    public List<Order> getOrdersContainingProduct(int productId) {
+        ensureOrderIndexes();
+        long stamp = orderLock.readLock();
+        List<Order> result;
+        try {
+            Set<Order> productOrders = ordersByProduct.get(productId);
+            result = productOrders == null ? new ArrayList<>() : new ArrayList<>(productOrders);
+        } finally {
+            orderLock.unlockRead(stamp);
+        }
+        if (archive != null && archive.countForProduct(productId) > 0) {
+            result.addAll(archive.ordersContaining(productId));
+        }
+        return result;
     }
 
     public int getTotalProducts() {
-        return products.size();
+        long stamp = catalogLock.tryOptimisticRead();
+        int count = productCount;
+        if (!catalogLock.validate(stamp)) {
+            stamp = catalogLock.readLock();
+            try {
+                count = productCount;
+            } finally {
+                catalogLock.unlockRead(stamp);
+            }
+        }
+        return count;
     }
 
     public int getTotalInStock() {
-        return products.stream()
-            .mapToInt(Product::getQuantity)
-            .sum();
+        return (int) totalInStock.get();
     }
 
+    /** Counts hot and archived orders; the archive count comes from its index. */
     public int getTotalOrders() {
-        return orders.size();
+        long stamp = orderLock.tryOptimisticRead();
+        int count = orderCount;
+        if (!orderLock.validate(stamp)) {
+            stamp = orderLock.readLock();
+            try {
+                count = orderCount;
+            } finally {
+                orderLock.unlockRead(stamp);
+            }
+        }
+        return archive == null ? count : count + archive.size();
+    }
+
+    public double getInventoryValue() {
+        long stamp = catalogLock.readLock();
+        try {
+            return productColumns.valuationCents() / 100.0;
+        } finally {
+            catalogLock.unlockRead(stamp);
+        }
     }
 
     public int getLowStockCount() {
-        return (int) products.stream()
-            .filter(p -> p.getQuantity() <= LOW_STOCK_THRESHOLD)
-            .count();
+        return lowStockCount.get();
     }
 
     public List<Order> getRecentOrders(int count) {
-        return orders.stream()
-            .sorted((o1, o2) -> o2.getDate().compareTo(o1.getDate()))
-            .limit(count)
-            .collect(Collectors.toList());
+        List<Order> recent = new ArrayList<>();
+        for (Order order : orders.descendingMap().values()) {
+            if (recent.size() >= count) {
+                break;
+            }
+            recent.add(order);
+        }
+        return recent;
+    }
+
+    private boolean isLive(Session session) {
+        long now = System.currentTimeMillis();
+        if (now - session.lastAccess > SESSION_IDLE_TIMEOUT_MS) {
+            sessions.remove(session.getToken(), session);
+            return false;
+        }
+        session.lastAccess = now;
+        return true;
+    }
+
+    private void startSessionSweeper() {
+        ScheduledExecutorService sweeper = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "session-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        sweeper.scheduleWithFixedDelay(() -> {
+            long cutoff = System.currentTimeMillis() - SESSION_IDLE_TIMEOUT_MS;
+            sessions.values().removeIf(session -> session.lastAccess < cutoff);
+        }, 1, 1, TimeUnit.MINUTES);
+    }
+
+    private void storeUser(User user) {
+        users.add(user);
+        usersByName.put(lookupKey(user.getUsername()), user);
+        usersByEmail.put(lookupKey(user.getEmail()), user);
+    }
+
+    private void storeProduct(Product product) {
+        products.add(product);
+        product.catalogPosition = nextCatalogPosition++;
+        productsById.put(product.getId(), product);
+        productsByName.put(lookupKey(product.getName()), product);
+        productNameIndex.add(product, product.getName());
+        productCount++;
+        product.slot = productColumns.add(product.getId(), product.getQuantity(),
+            ProductColumns.toCents(product.getPrice()));
+        totalInStock.addAndGet(product.getQuantity());
+        refreshStockLevel(product);
+    }
+
+    private void renameProduct(Product product, String name) {
+        productsByName.remove(lookupKey(product.getName()));
+        product.setName(name);
+        productsByName.put(lookupKey(name), product);
+        productNameIndex.add(product, name);
+    }
+
+    private void applyReorderThreshold(Product product, int threshold) {
+        product.setReorderThreshold(threshold);
+        refreshStockLevel(product);
+    }
+
+    private void repriceProduct(Product product, double price) {
+        product.setPrice(price);
+        productColumns.setPriceCents(product.slot, ProductColumns.toCents(price));
+    }
+
+    private void restockProduct(Product product, int quantity) {
+        int previous = product.quantity;
+        product.setQuantity(quantity);
+        totalInStock.addAndGet(quantity - previous);
+        refreshStockLevel(product);
+    }
+
+    private void removeProduct(Product product) {
+        products.remove(product);
+        productsById.remove(product.getId());
+        productsByName.remove(lookupKey(product.getName()));
+        productNameIndex.remove(product);
+        productCount--;
+        int movedId = productColumns.remove(product.slot);
+        if (movedId >= 0) {
+            productsById.get(movedId).slot = product.slot;
+        }
+        totalInStock.addAndGet(-product.getQuantity());
+        if (product.stockLevel != null) {
+            lowStock.remove(product.stockLevel);
+            product.stockLevel = null;
+            lowStockCount.decrementAndGet();
+        }
+    }
+
+    /**
+     * Reserves every product's demand or none of it. Each product is
+     * decremented with its own compare-and-set; if one line cannot be
+     * satisfied the lines already taken are handed back.
+     */
+    private boolean reserveAll(Map<Product, Integer> demand) {
+        List<Map.Entry<Product, Integer>> reserved = new ArrayList<>(demand.size());
+        for (Map.Entry<Product, Integer> entry : demand.entrySet()) {
+            if (!entry.getKey().reserve(entry.getValue())) {
+                for (Map.Entry<Product, Integer> taken : reserved) {
+                    taken.getKey().release(taken.getValue());
+                }
+                return false;
+            }
+            reserved.add(entry);
+        }
+        for (Map.Entry<Product, Integer> entry : reserved) {
+            stockChanged(entry.getKey(), -entry.getValue());
+        }
+        return true;
+    }
+
+    private void stockChanged(Product product, int delta) {
+        totalInStock.addAndGet(delta);
+        refreshStockLevel(product);
+    }
+
+    private void refreshStockLevel(Product product) {
+        synchronized (product) {
+            productColumns.setQuantity(product.slot, product.quantity);
+            StockLevel previous = product.stockLevel;
+            if (previous != null) {
+                lowStock.remove(previous);
+            }
+            if (product.isLowStock()) {
+                product.stockLevel = new StockLevel(product);
+                lowStock.add(product.stockLevel);
+                if (previous == null) {
+                    lowStockCount.incrementAndGet();
+                }
+            } else {
+                product.stockLevel = null;
+                if (previous != null) {
+                    lowStockCount.decrementAndGet();
+                }
+            }
+        }
+    }
+
+    private List<OrderItem> priceItems(List<OrderItem> items) {
+        List<OrderItem> priced = new ArrayList<>(items.size());
+        for (OrderItem item : items) {
+            Product product = productsById.get(item.getProductId());
+            double unitPrice = product != null ? product.getPrice() : 0.0;
+            priced.add(new OrderItem(item.getProductId(), item.getQuantity(), unitPrice));
+        }
+        return priced;
+    }
+
+    private void storeOrder(Order order) {
+        orders.put(OrderKey.of(order), order);
+        ordersById.put(order.getId(), order);
+        orderCount++;
+        if (orderIndexesBuilt) {
+            indexOrder(order);
+        }
+    }
+
+    private void indexOrder(Order order) {
+        Set<Order> customerOrders = ordersByCustomer.get(order.getCustomerName());
+        if (customerOrders == null) {
+            // Customers repeat, so only a name seen for the first time touches the trigram index.
+            customerOrders = new HashSet<>();
+            ordersByCustomer.put(order.getCustomerName(), customerOrders);
+            customerNameIndex.add(order.getCustomerName(), order.getCustomerName());
+        }
+        customerOrders.add(order);
+        for (OrderItem item : order.items) {
+            Set<Order> productOrders = ordersByProduct.get(item.getProductId());
+            if (productOrders == null) {
+                productOrders = new LinkedHashSet<>();
+                ordersByProduct.put(item.getProductId(), productOrders);
+            }
+            productOrders.add(order);
+        }
+    }
+
+    private void removeOrder(Order order) {
+        orders.remove(OrderKey.of(order));
+        ordersById.remove(order.getId());
+        orderCount--;
+        if (orderIndexesBuilt) {
+            unindexOrder(order);
+        }
+    }
+
+    /**
+     * Builds the per-customer and per-product order indexes if startup
+     * deferred them. Loading them for millions of orders costs far more than
+     * the snapshot itself, so recovery leaves them to the first query that
+     * needs them.
+     */
+    private void ensureOrderIndexes() {
+        if (orderIndexesBuilt) {
+            return;
+        }
+        long stamp = orderLock.writeLock();
+        try {
+            if (!orderIndexesBuilt) {
+                for (Order order : orders.values()) {
+                    indexOrder(order);
+                }
+                orderIndexesBuilt = true;
+            }
+        } finally {
+            orderLock.unlockWrite(stamp);
+        }
+    }
+
+    private void unindexOrder(Order order) {
+        Set<Order> customerOrders = ordersByCustomer.get(order.getCustomerName());
+        if (customerOrders != null) {
+            customerOrders.remove(order);
+            if (customerOrders.isEmpty()) {
+                ordersByCustomer.remove(order.getCustomerName());
+                customerNameIndex.remove(order.getCustomerName());
+            }
+        }
+        for (OrderItem item : order.items) {
+            Set<Order> productOrders = ordersByProduct.get(item.getProductId());
+            if (productOrders != null) {
+                productOrders.remove(order);
+                if (productOrders.isEmpty()) {
+                    ordersByProduct.remove(item.getProductId());
+                }
+            }
+        }
+    }
+
+    private void awaitDurable() {
+        if (storage != null) {
+            storage.sync();
+        }
+    }
+
+    /**
+     * Asks the storage engine to fold its log into long-term files now
+     * rather than on its own schedule. Returns false if there is no data
+     * directory or the engine had nothing to do.
+     */
+    public boolean checkpoint() {
+        return storage != null && storage.checkpoint();
+    }
+
+    /**
+     * What the storage engine replayed at startup, counting torn tails cut
+     * off both the log and the order archive; empty without a data directory.
+     */
+    public RecoveryStats getRecoveryStats() {
+        RecoveryStats stats = storage != null ? storage.recoveryStats() : RecoveryStats.NONE;
+        return archive != null ? stats.plusDiscarded(archive.getDiscardedBytes()) : stats;
+    }
+
+    /** Stream of catalog and order changes for downstream consumers. */
+    public ChangeFeed getChangeFeed() {
+        return changeFeed;
+    }
+
+    /**
+     * Writes a catalog or order batch through to storage and the change
+     * feed. Callers hold the domain lock that ordered it.
+     */
+    private void commit(WriteBatch batch) {
+        if (storage != null) {
+            storage.write(batch);
+        }
+        changeFeed.publish(batch);
+    }
+
+    /**
+     * Moves completed and cancelled orders dated before {@code cutoff} out of
+     * the hot indexes into the archive, one block of at most
+     * {@value #ARCHIVE_BLOCK_ORDERS} orders at a time. Each block is written
+     * and synced without holding any lock; only dropping its orders takes
+     * the order write lock. An order whose status changed in between stays
+     * hot and its archived copy is written off. Returns how many orders were
+     * archived; throws if the archive could not be written, which stops the
+     * scheduled passes rather than appending after a half-written block.
+     */
+    public int archiveOrders(Date cutoff) {
+        if (archive == null || !archiveRunning.compareAndSet(false, true)) {
+            return 0;
+        }
+        int archived = 0;
+        try {
+            OrderKey before = new OrderKey(cutoff.getTime(), Long.MIN_VALUE);
+            while (true) {
+                List<Order> batch = new ArrayList<>();
+                List<OrderStatus> statuses = new ArrayList<>();
+                for (Order order : orders.headMap(before).values()) {
+                    OrderStatus status = order.getStatus();
+                    if (status == OrderStatus.COMPLETED || status == OrderStatus.CANCELLED) {
+                        batch.add(order);
+                        statuses.add(status);
+                        if (batch.size() == ARCHIVE_BLOCK_ORDERS) {
+                            break;
+                        }
+                    }
+                }
+                if (batch.isEmpty()) {
+                    return archived;
+                }
+
+                OrderArchive.Block block = archive.write(batch, statuses);
+                List<Order> changed = new ArrayList<>();
+                List<OrderStatus> changedStatuses = new ArrayList<>();
+                WriteBatch removed = new WriteBatch();
+                long stamp = orderLock.writeLock();
+                try {
+                    for (int i = 0; i < batch.size(); i++) {
+                        Order order = batch.get(i);
+                        if (ordersById.get(order.getId()) == order && order.getStatus() == statuses.get(i)) {
+                            removeOrder(order);
+                            removed.orderDeleted(order.getId());
+                            archived++;
+                        } else {
+                            changed.add(order);
+                            changedStatuses.add(statuses.get(i));
+                        }
+                    }
+                    archive.publish(block);
+                    if (!changed.isEmpty()) {
+                        archive.markDead(block, changed, changedStatuses);
+                    }
+                    // Straight to storage: archived orders still exist, so the change feed is not told.
+                    storage.write(removed);
+                } finally {
+                    orderLock.unlockWrite(stamp);
+                    awaitDurable();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot archive orders", e);
+        } finally {
+            archiveRunning.set(false);
+        }
+    }
+
+    private static OrderArchive openArchive(Path dataDir) {
+        try {
+            OrderArchive archive = new OrderArchive(dataDir.resolve("archive"));
+            Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+                try {
+                    archive.close();
+                } catch (IOException e) {
+                    throw new UncheckedIOException("Cannot close order archive", e);
+                }
+            }, "archive-close"));
+            return archive;
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open order archive in " + dataDir, e);
+        }
+    }
+
+    /**
+     * An archival pass that stopped after syncing its block but before its
+     * orders left the store leaves them in both places. Only the last block
+     * can be affected: its copies win, unless the live order has changed
+     * since, in which case the copy is written off. A live order that is
+     * not the archived one (same id, different date, customer or items) is
+     * left alone.
+     */
+    private void reconcileArchive() {
+        OrderArchive.Block last = archive.lastBlock();
+        if (last == null) {
+            return;
+        }
+        boolean overlaps = false;
+        for (long id : ordersById.keySet()) {
+            if (id >= last.getMinId() && id <= last.getMaxId()) {
+                overlaps = true;
+                break;
+            }
+        }
+        if (!overlaps) {
+            return;
+        }
+        List<Order> changed = new ArrayList<>();
+        List<OrderStatus> changedStatuses = new ArrayList<>();
+        WriteBatch removed = new WriteBatch();
+        for (Order copy : archive.load(last)) {
+            Order live = ordersById.get(copy.getId());
+            if (live == null || !sameOrder(live, copy)) {
+                continue;
+            }
+            if (live.getStatus() == copy.getStatus()) {
+                removeOrder(live);
+                removed.orderDeleted(live.getId());
+            } else {
+                changed.add(copy);
+                changedStatuses.add(copy.getStatus());
+            }
+        }
+        try {
+            if (!changed.isEmpty()) {
+                archive.markDead(last, changed, changedStatuses);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot reconcile order archive", e);
+        }
+        storage.write(removed);
+        storage.sync();
+    }
+
+    /** True if both are the same order, apart from the status. */
+    private static boolean sameOrder(Order a, Order b) {
+        if (a.getId() != b.getId() || a.getDate().getTime() != b.getDate().getTime()
+                || !a.getCustomerName().equals(b.getCustomerName()) || a.items.size() != b.items.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.items.size(); i++) {
+            OrderItem x = a.items.get(i);
+            OrderItem y = b.items.get(i);
+            if (x.getProductId() != y.getProductId() || x.getQuantity() != y.getQuantity()
+                    || Double.compare(x.getUnitPrice(), y.getUnitPrice()) != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void startArchiver() {
+        long interval = Long.getLong("ims.archive.intervalMinutes", 60);
+        long age = TimeUnit.DAYS.toMillis(Long.getLong("ims.archive.afterDays", 90));
+        ScheduledExecutorService archiver = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "order-archiver");
+            t.setDaemon(true);
+            return t;
+        });
+        archiver.scheduleWithFixedDelay(() -> archiveOrders(new Date(System.currentTimeMillis() - age)),
+            interval, interval, TimeUnit.MINUTES);
+    }
+
+    private static Path dataDirectory() {
+        String dir = System.getProperty("ims.data.dir");
+        return dir == null || dir.trim().isEmpty() ? null : Paths.get(dir);
+    }
+
+    private static StorageEngine openStorage(Path dataDir) {
+        StorageEngine engine = StorageEngine.open(dataDir);
+        Runtime.getRuntime().addShutdownHook(new Thread(engine::close, "storage-close"));
+        return engine;
+    }
+
+    /**
+     * Loads the indexes from the storage engine. Runs in the constructor,
+     * before the instance is published, so no locks are taken. A brand-new
+     * store starts empty unless {@code ims.sampleData} is set.
+     */
+    private void recover() {
+        // The three domains share no index, so the catalog loads on its own thread while the orders load here.
+        FutureTask<Void> catalog = new FutureTask<>(() -> {
+            storage.users().forEach(this::storeUser);
+            storage.products().forEach(this::storeProduct);
+            return null;
+        });
+        new Thread(catalog, "recover-catalog").start();
+        orderIndexesBuilt = false;
+        storage.orders().forEach(this::storeOrder);
+        try {
+            catalog.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while loading the catalog", e);
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Cannot load the catalog", e.getCause());
+        }
+        if (users.isEmpty() && products.isEmpty() && orders.isEmpty() && Boolean.getBoolean("ims.sampleData")) {
+            initializeSampleData();
+            WriteBatch seed = new WriteBatch();
+            for (User user : users) {
+                seed.user(user.getUsername(), user);
+            }
+            for (Product product : products) {
+                seed.product(product);
+            }
+            for (Order order : orders.values()) {
+                seed.order(order);
+            }
+            storage.write(seed);
+            storage.sync();
+        }
+
+        int maxProductId = 0;
+        for (Product product : products) {
+            maxProductId = Math.max(maxProductId, product.getId());
+        }
+        // Archived and deleted orders have left the store, so their ids only survive in the archive and the reservations.
+        long maxOrderId = archive.getMaxId();
+        for (long id : ordersById.keySet()) {
+            maxOrderId = Math.max(maxOrderId, id);
+        }
+        long[] reserved = loadIdReservations();
+        Product.IDS.advancePast(Math.max(maxProductId, reserved[0] - 1));
+        Order.IDS.advancePast(Math.max(maxOrderId, reserved[1] - 1));
+    }
+
+    /**
+     * Makes the id allocators record how far ahead they have handed out
+     * ids, so an id whose record is gone (a deleted product, a deleted or
+     * archived order) is never handed out again after a restart. A clean
+     * shutdown trims the reservations back to the ids actually leased.
+     */
+    private void reserveIds() {
+        idReservations[0] = Product.IDS.getHighWater();
+        idReservations[1] = Order.IDS.getHighWater();
+        Product.IDS.reserveWith(bound -> storeIdReservation(0, bound), PRODUCT_ID_RESERVE_STEP);
+        Order.IDS.reserveWith(bound -> storeIdReservation(1, bound), ORDER_ID_RESERVE_STEP);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            Product.IDS.trimReservation();
+            Order.IDS.trimReservation();
+        }, "id-reservations"));
+    }
+
+    private void storeIdReservation(int kind, long bound) {
+        synchronized (idReservations) {
+            idReservations[kind] = bound;
+            ByteBuffer out = ByteBuffer.allocate(24);
+            out.putInt(ID_FILE_MAGIC).putLong(idReservations[0]).putLong(idReservations[1]);
+            CRC32 crc = new CRC32();
+            crc.update(out.array(), 0, 20);
+            out.putInt((int) crc.getValue()).flip();
+            Path temp = idFile.resolveSibling(idFile.getFileName() + ".tmp");
+            try {
+                try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    while (out.hasRemaining()) {
+                        channel.write(out);
+                    }
+                    channel.force(true);
+                }
+                Files.move(temp, idFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                throw new UncheckedIOException("Cannot record id reservation in " + idFile, e);
+            }
+        }
+    }
+
+    /** The stored product and order id bounds, or zeros for a store that has none yet. */
+    private long[] loadIdReservations() {
+        try {
+            if (!Files.exists(idFile)) {
+                return new long[2];
+            }
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(idFile));
+            CRC32 crc = new CRC32();
+            crc.update(in.array(), 0, Math.min(20, in.limit()));
+            if (in.limit() != 24 || in.getInt(0) != ID_FILE_MAGIC || in.getInt(20) != (int) crc.getValue()) {
+                throw new IOException("Corrupt id reservation file " + idFile);
+            }
+            return new long[] {in.getLong(4), in.getLong(12)};
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static String lookupKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
     }
 
     private boolean isValidEmail(String email) {
@@ -335,40 +1422,94 @@ public class BackendService {
     private void initializeSampleData() {
         User admin = new User("admin", "admin", "admin@inventory.com");
         admin.setPhone("09123456789");
-        users.add(admin);
+        storeUser(admin);
 
         User cardo = new User("Cardo Dalisay", "password123", "cardodalisay@gmail.com");
         cardo.setPhone("09123456789");
-        users.add(cardo);
+        storeUser(cardo);
 
-        products.add(new Product("AMD Ryzen 7 7800X3D", 21999.0, 7));
-        products.add(new Product("RM750x Fully Modular Power Supply", 7937.0, 11));
-        products.add(new Product("Nvidia RTX 5090", 99999.0, 3));
-        products.add(new Product("Intel Core Ultra 9 Processor 285K", 36600.0, 8));
+        storeProduct(new Product("AMD Ryzen 7 7800X3D", 21999.0, 7));
+        storeProduct(new Product("RM750x Fully Modular Power Supply", 7937.0, 11));
+        storeProduct(new Product("Nvidia RTX 5090", 99999.0, 3));
+        storeProduct(new Product("Intel Core Ultra 9 Processor 285K", 36600.0, 8));
 
         List<OrderItem> items1 = new ArrayList<>();
         items1.add(new OrderItem(1, 2));
         items1.add(new OrderItem(3, 1));
-        orders.add(new Order("Johnler", items1));
-        orders.get(0).setStatus(OrderStatus.COMPLETED);
+        Order order1 = new Order("Johnler", priceItems(items1));
+        order1.setStatus(OrderStatus.COMPLETED);
+        storeOrder(order1);
 
         List<OrderItem> items2 = new ArrayList<>();
         items2.add(new OrderItem(2, 1));
-        orders.add(new Order("James", items2));
-        orders.get(1).setStatus(OrderStatus.PENDING);
+        Order order2 = new Order("James", priceItems(items2));
+        order2.setStatus(OrderStatus.PENDING);
+        storeOrder(order2);
 
         List<OrderItem> items3 = new ArrayList<>();
         items3.add(new OrderItem(4, 1));
         items3.add(new OrderItem(1, 1));
-        orders.add(new Order("Johnson", items3));
-        orders.get(2).setStatus(OrderStatus.PROCESSING);
+        Order order3 = new Order("Johnson", priceItems(items3));
+        order3.setStatus(OrderStatus.PROCESSING);
+        storeOrder(order3);
+    }
+
+    private static final class OrderKey implements Comparable<OrderKey> {
+        private final long time;
+        private final long id;
+
+        OrderKey(long time, long id) {
+            this.time = time;
+            this.id = id;
+        }
+
+        static OrderKey of(Order order) {
+            return new OrderKey(order.getDate().getTime(), order.getId());
+        }
+
+        @Override
+        public int compareTo(OrderKey other) {
+            int byTime = Long.compare(time, other.time);
+            return byTime != 0 ? byTime : Long.compare(id, other.id);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof OrderKey && compareTo((OrderKey) o) == 0;
+        }
+
+        @Override
+        public int hashCode() {
+            return Long.hashCode(time) * 31 + Long.hashCode(id);
+        }
+    }
+
+    /**
+     * Entry in the low-stock set, ordered so the product furthest below its
+     * reorder threshold comes first. The margin is captured when the entry
+     * is created, so the set stays ordered while the product changes.
+     */
+    private static final class StockLevel implements Comparable<StockLevel> {
+        private final Product product;
+        private final int margin;
+
+        StockLevel(Product product) {
+            this.product = product;
+            this.margin = product.getQuantity() - product.getReorderThreshold();
+        }
+
+        @Override
+        public int compareTo(StockLevel other) {
+            int byMargin = Integer.compare(margin, other.margin);
+            return byMargin != 0 ? byMargin : Integer.compare(product.getId(), other.product.getId());
+        }
     }
 
     public static class User {
-        private String username;
-        private String password;
-        private String email;
-        private String phone;
+        private volatile String username;
+        private volatile String password;
+        private volatile String email;
+        private volatile String phone;
 
         public User(String username, String password, String email) {
             this.username = username;
@@ -390,18 +1531,101 @@ public class BackendService {
         public void setPhone(String phone) { this.phone = phone; }
     }
 
+    public static class Session {
+        private final String token;
+        private final User user;
+        private volatile long lastAccess;
+
+        public Session(String token, User user) {
+            this.token = token;
+            this.user = user;
+            this.lastAccess = System.currentTimeMillis();
+        }
+
+        public String getToken() { return token; }
+
+        public User getUser() { return user; }
+    }
+
+    public static class OrderRequest {
+        private final String customerName;
+        private final List<OrderItem> items;
+
+        public OrderRequest(String customerName, List<OrderItem> items) {
+            this.customerName = customerName;
+            this.items = items;
+        }
+
+        public String getCustomerName() { return customerName; }
+
+        public List<OrderItem> getItems() { return items; }
+    }
+
+    public static class ProductUpsert {
+        private final String name;
+        private final double price;
+        private final int quantity;
+
+        public ProductUpsert(String name, double price, int quantity) {
+            this.name = name;
+            this.price = price;
+            this.quantity = quantity;
+        }
+
+        public String getName() { return name; }
+
+        public double getPrice() { return price; }
+
+        public int getQuantity() { return quantity; }
+    }
+
+    public static class OrderResult {
+        private final Order order;
+        private final String rejectionReason;
+
+        private OrderResult(Order order, String rejectionReason) {
+            this.order = order;
+            this.rejectionReason = rejectionReason;
+        }
+
+        static OrderResult accepted(Order order) {
+            return new OrderResult(order, null);
+        }
+
+        static OrderResult rejected(String reason) {
+            return new OrderResult(null, reason);
+        }
+
+        public boolean isAccepted() { return order != null; }
+
+        public Order getOrder() { return order; }
+
+        public String getRejectionReason() { return rejectionReason; }
+    }
+
     public static class Product {
-        private static int nextId = 1;
-        private int id;
-        private String name;
-        private double price;
-        private int quantity;
+        private static final AtomicIntegerFieldUpdater<Product> QUANTITY =
+            AtomicIntegerFieldUpdater.newUpdater(Product.class, "quantity");
+        private static final IdAllocator IDS = new IdAllocator(1, 64);
+        private final int id;
+        private volatile String name;
+        private volatile double price;
+        private volatile int quantity;
+        private volatile int reorderThreshold;
+        private int slot;
+        private long catalogPosition;
+        private StockLevel stockLevel;
 
         public Product(String name, double price, int quantity) {
-            this.id = nextId++;
+            this(IDS.nextInt(), name, price, quantity);
+        }
+
+        Product(int id, String name, double price, int quantity) {
+            this.id = id;
             this.name = name;
             this.price = price;
             this.quantity = quantity;
+            this.reorderThreshold = DEFAULT_REORDER_THRESHOLD;
         }
 
         public int getId() { return id; }
@@ -415,28 +1639,56 @@ public class BackendService {
         public int getQuantity() { return quantity; }
         public void setQuantity(int quantity) { this.quantity = quantity; }
 
+        public int getReorderThreshold() { return reorderThreshold; }
+        public void setReorderThreshold(int reorderThreshold) { this.reorderThreshold = reorderThreshold; }
+
         public boolean isLowStock() {
-            return quantity <= LOW_STOCK_THRESHOLD;
+            return quantity <= reorderThreshold;
+        }
+
+        private boolean reserve(int amount) {
+            int current;
+            do {
+                current = quantity;
+                if (current < amount) {
+                    return false;
+                }
+            } while (!QUANTITY.compareAndSet(this, current, current - amount));
+            return true;
+        }
+
+        private void release(int amount) {
+            QUANTITY.addAndGet(this, amount);
         }
     }
 
     public static class Order {
-        private static int nextId = 1;
-        private int id;
+        private static final IdAllocator IDS = new IdAllocator(1, 64);
+        private final long id;
         private String customerName;
         private List<OrderItem> items;
         private Date date;
-        private OrderStatus status;
+        private volatile OrderStatus status;
+        private final double total;
 
         public Order(String customerName, List<OrderItem> items) {
-            this.id = nextId++;
+            this(IDS.next(), customerName, items, new Date(), OrderStatus.PENDING);
+        }
+
+        Order(long id, String customerName, List<OrderItem> items, Date date, OrderStatus status) {
+            this.id = id;
             this.customerName = customerName;
             this.items = new ArrayList<>(items);
-            this.date = new Date();
-            this.status = OrderStatus.PENDING;
+            this.date = date;
+            this.status = status;
+            double sum = 0;
+            for (OrderItem item : this.items) {
+                sum += item.getLineTotal();
+            }
+            this.total = sum;
         }
 
-        public int getId() { return id; }
+        public long getId() { return id; }
 
         public String getCustomerName() { return customerName; }
         public void setCustomerName(String customerName) { this.customerName = customerName; }
@@ -450,14 +1702,6 @@ public class BackendService {
         public void setStatus(OrderStatus status) { this.status = status; }
 
         public double getTotal() {
-            BackendService service = BackendService.getInstance();
-            double total = 0.0;
-            for (OrderItem item : items) {
-                Product product = service.getProductById(item.getProductId());
-                if (product != null) {
-                    total += product.getPrice() * item.getQuantity();
-                }
-            }
             return total;
         }
 
@@ -469,10 +1713,16 @@ public class BackendService {
     public static class OrderItem {
         private int productId;
         private int quantity;
+        private double unitPrice;
 
         public OrderItem(int productId, int quantity) {
+            this(productId, quantity, 0.0);
+        }
+
+        public OrderItem(int productId, int quantity, double unitPrice) {
             this.productId = productId;
             this.quantity = quantity;
+            this.unitPrice = unitPrice;
         }
 
         public int getProductId() { return productId; }
@@ -480,6 +1730,12 @@ public class BackendService {
 
         public int getQuantity() { return quantity; }
         public void setQuantity(int quantity) { this.quantity = quantity; }
+
+        public double getUnitPrice() { return unitPrice; }
+
+        public double getLineTotal() {
+            return unitPrice * quantity;
+        }
     }
 
     public enum OrderStatus {
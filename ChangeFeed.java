@@ -0,0 +1,349 @@
+package SadSystem;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Ordered stream of catalog and order changes for downstream systems that
+ * would otherwise poll {@code getAllProducts()}/{@code getAllOrders()} and
+ * diff. BackendService publishes every committed {@link WriteBatch} here
+ * while it still holds the domain lock, so sequence numbers follow apply
+ * order. Stock movements are deltas, for the same reason as in the batch.
+ *
+ * Events live in a fixed ring ({@code ims.cdc.capacity} slots). Writers
+ * never wait for readers: once the ring is full the oldest event is
+ * overwritten. A consumer polls from the offset after the last event it
+ * processed; if it fell so far behind that the offset was overwritten, the
+ * poll says how many events were missed and the consumer resyncs from a
+ * full read before carrying on from {@link Poll#getNextSequence()}.
+ *
+ * Batches are only decoded into events while at least one consumer is
+ * {@link #subscribe() subscribed}. Without one, publishing just advances
+ * the sequence past the events the batch would have produced, so a
+ * consumer that reads across that stretch sees it as missed and resyncs.
+ *
+ * Sequence numbers start at 1 with every process. {@link #getEpoch()}
+ * differs between runs, so a consumer that stores its offset can tell it
+ * has to resync after a restart.
+ */
+public class ChangeFeed {
+
+    public enum Type {
+        PRODUCT_UPSERTED, PRODUCT_DELETED, STOCK_CHANGED, ORDER_CREATED, ORDER_STATUS_CHANGED, ORDER_DELETED
+    }
+
+    private final Event[] ring;
+    private final int mask;
+    private final long epoch = ThreadLocalRandom.current().nextLong();
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private long nextSequence = 1;
+    private long firstRetained = 1;
+    private volatile int subscribers;
+    private int waiters;
+
+    public ChangeFeed(int capacity) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        ring = new Event[size];
+        mask = size - 1;
+    }
+
+    /**
+     * Starts recording events. Call before taking the starting offset and
+     * doing the full read, so nothing between the two is skipped.
+     */
+    public void subscribe() {
+        lock.lock();
+        try {
+            subscribers++;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Undoes one {@link #subscribe()}; the last one out stops the recording. */
+    public void unsubscribe() {
+        lock.lock();
+        try {
+            if (subscribers == 0) {
+                throw new IllegalStateException("Not subscribed");
+            }
+            subscribers--;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Appends the catalog and order records of {@code batch}. User records
+     * are not part of the feed. Callers hold the lock that ordered the batch.
+     */
+    void publish(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (subscribers == 0) {
+            skip(batch.catalogAndOrderRecords());
+            return;
+        }
+        Collector collector = new Collector(System.currentTimeMillis());
+        batch.replay(collector);
+        if (collector.events.isEmpty()) {
+            return;
+        }
+        lock.lock();
+        try {
+            for (Event event : collector.events) {
+                event.sequence = nextSequence++;
+                ring[(int) (event.sequence & mask)] = event;
+            }
+            if (waiters > 0) {
+                published.signalAll();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Consumes the sequence numbers of events nobody was subscribed to. */
+    private void skip(int events) {
+        if (events == 0) {
+            return;
+        }
+        lock.lock();
+        try {
+            nextSequence += events;
+            firstRetained = nextSequence;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public long getEpoch() {
+        return epoch;
+    }
+
+    public int getCapacity() {
+        return ring.length;
+    }
+
+    /** Sequence number of the newest event, or 0 if nothing was published yet. */
+    public long getLatestSequence() {
+        lock.lock();
+        try {
+            return nextSequence - 1;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Sequence number of the oldest event still in the ring; newer than any skipped one. */
+    public long getOldestSequence() {
+        lock.lock();
+        try {
+            return oldestSequence();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Returns up to {@code maxEvents} events starting at {@code fromSequence}
+     * without waiting. Pass 1 to read from the beginning.
+     */
+    public Poll poll(long fromSequence, int maxEvents) {
+        lock.lock();
+        try {
+            return read(fromSequence, maxEvents);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Like {@link #poll(long, int)}, but waits up to {@code timeout} for an
+     * event at or after {@code fromSequence} to be published.
+     */
+    public Poll poll(long fromSequence, int maxEvents, long timeout, TimeUnit unit) throws InterruptedException {
+        long remaining = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            checkOffset(fromSequence);
+            waiters++;
+            try {
+                while (fromSequence >= nextSequence && remaining > 0) {
+                    remaining = published.awaitNanos(remaining);
+                }
+            } finally {
+                waiters--;
+            }
+            return read(fromSequence, maxEvents);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private Poll read(long fromSequence, int maxEvents) {
+        checkOffset(fromSequence);
+        if (maxEvents < 1) {
+            throw new IllegalArgumentException("maxEvents must be positive: " + maxEvents);
+        }
+        long start = Math.max(fromSequence, oldestSequence());
+        long end = Math.min(nextSequence, start + maxEvents);
+        List<Event> events = new ArrayList<>((int) (end - start));
+        for (long sequence = start; sequence < end; sequence++) {
+            events.add(ring[(int) (sequence & mask)]);
+        }
+        return new Poll(events, end, start - fromSequence);
+    }
+
+    private void checkOffset(long fromSequence) {
+        if (fromSequence < 1 || fromSequence > nextSequence) {
+            throw new IllegalArgumentException("Offset " + fromSequence + " is outside the feed (next is "
+                + nextSequence + ")");
+        }
+    }
+
+    private long oldestSequence() {
+        return Math.max(firstRetained, nextSequence - ring.length);
+    }
+
+    /** Turns the records of one batch into events sharing its timestamp. */
+    private static final class Collector implements WriteBatch.Handler {
+        private final long timestamp;
+        private final List<Event> events = new ArrayList<>();
+
+        Collector(long timestamp) {
+            this.timestamp = timestamp;
+        }
+
+        @Override
+        public void user(String previousName, BackendService.User user) {
+        }
+
+        @Override
+        public void product(BackendService.Product product) {
+            events.add(new Event(Type.PRODUCT_UPSERTED, timestamp, product.getId(), 0, 0, product, null, null));
+        }
+
+        @Override
+        public void productDeleted(int productId) {
+            events.add(new Event(Type.PRODUCT_DELETED, timestamp, productId, 0, 0, null, null, null));
+        }
+
+        @Override
+        public void stock(int productId, int delta) {
+            events.add(new Event(Type.STOCK_CHANGED, timestamp, productId, 0, delta, null, null, null));
+        }
+
+        @Override
+        public void order(BackendService.Order order) {
+            events.add(new Event(Type.ORDER_CREATED, timestamp, 0, order.getId(), 0, null, order,
+                order.getStatus()));
+        }
+
+        @Override
+        public void orderStatus(long orderId, BackendService.OrderStatus status) {
+            events.add(new Event(Type.ORDER_STATUS_CHANGED, timestamp, 0, orderId, 0, null, null, status));
+        }
+
+        @Override
+        public void orderDeleted(long orderId) {
+            events.add(new Event(Type.ORDER_DELETED, timestamp, 0, orderId, 0, null, null, null));
+        }
+    }
+
+    /**
+     * One change. Product events carry a snapshot of the product as
+     * written; order events carry the order, whose status may have moved
+     * on since, so {@link #getStatus()} is the status the event recorded.
+     */
+    public static final class Event {
+        private long sequence;
+        private final Type type;
+        private final long timestamp;
+        private final int productId;
+        private final long orderId;
+        private final int delta;
+        private final BackendService.Product product;
+        private final BackendService.Order order;
+        private final BackendService.OrderStatus status;
+
+        private Event(Type type, long timestamp, int productId, long orderId, int delta,
+                      BackendService.Product product, BackendService.Order order,
+                      BackendService.OrderStatus status) {
+            this.type = type;
+            this.timestamp = timestamp;
+            this.productId = productId;
+            this.orderId = orderId;
+            this.delta = delta;
+            this.product = product;
+            this.order = order;
+            this.status = status;
+        }
+
+        public long getSequence() { return sequence; }
+
+        public Type getType() { return type; }
+
+        public long getTimestamp() { return timestamp; }
+
+        /** Product id for product and stock events. */
+        public int getProductId() { return productId; }
+
+        /** Order id for order events. */
+        public long getOrderId() { return orderId; }
+
+        /** Quantity change for {@link Type#STOCK_CHANGED}. */
+        public int getDelta() { return delta; }
+
+        /** Product as written, for {@link Type#PRODUCT_UPSERTED}. */
+        public BackendService.Product getProduct() { return product; }
+
+        /** The new order, for {@link Type#ORDER_CREATED}. */
+        public BackendService.Order getOrder() { return order; }
+
+        /** Status at the time of the event, for order creation and status changes. */
+        public BackendService.OrderStatus getStatus() { return status; }
+
+        @Override
+        public String toString() {
+            return sequence + " " + type + (type.name().startsWith("ORDER") ? " order " + orderId : " product " + productId);
+        }
+    }
+
+    /** Result of a poll: the events read and where to continue from. */
+    public static final class Poll {
+        private final List<Event> events;
+        private final long nextSequence;
+        private final long missed;
+
+        private Poll(List<Event> events, long nextSequence, long missed) {
+            this.events = Collections.unmodifiableList(events);
+            this.nextSequence = nextSequence;
+            this.missed = missed;
+        }
+
+        public List<Event> getEvents() { return events; }
+
+        /** Offset to pass to the next poll. */
+        public long getNextSequence() { return nextSequence; }
+
+        /**
+         * Events that were overwritten before this consumer read them. Non-zero
+         * means the consumer's copy is incomplete and it should resync.
+         */
+        public long getMissed() { return missed; }
+    }
+}
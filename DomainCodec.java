@@ -0,0 +1,396 @@
+package SadSystem;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Compact binary encoding of the BackendService domain types. Every message
+ * is a varint length followed by tagged fields ({@code fieldNumber << 3 |
+ * wireType}), so readers skip fields they do not know and fill in defaults
+ * for fields that are missing. New fields can therefore be added without
+ * breaking old data or old readers; a field number is never reused.
+ *
+ * Ids and quantities are varints (zig-zag where they may be negative),
+ * prices are raw IEEE doubles and order status is a small dictionary code
+ * that stays fixed even if the enum is reordered. Decoding reads straight
+ * from the given ByteBuffer, heap or memory-mapped, with no intermediate
+ * copy of the record.
+ *
+ * {@link #VERSION} identifies the envelope; containers write it once in
+ * their header rather than per message.
+ */
+public final class DomainCodec {
+
+    public static final int VERSION = 1;
+
+    private static final int VARINT = 0;
+    private static final int FIXED64 = 1;
+    private static final int BYTES = 2;
+
+    private static final int USER_USERNAME = 1;
+    private static final int USER_PASSWORD = 2;
+    private static final int USER_EMAIL = 3;
+    private static final int USER_PHONE = 4;
+
+    private static final int PRODUCT_ID = 1;
+    private static final int PRODUCT_NAME = 2;
+    private static final int PRODUCT_PRICE = 3;
+    private static final int PRODUCT_QUANTITY = 4;
+    private static final int PRODUCT_THRESHOLD = 5;
+
+    private static final int ITEM_PRODUCT_ID = 1;
+    private static final int ITEM_QUANTITY = 2;
+    private static final int ITEM_UNIT_PRICE = 3;
+
+    private static final int ORDER_ID = 1;
+    private static final int ORDER_CUSTOMER = 2;
+    private static final int ORDER_DATE = 3;
+    private static final int ORDER_STATUS = 4;
+    private static final int ORDER_ITEM = 5;
+
+    /** Status dictionary. Codes are stable; append new statuses at the end. */
+    private static final BackendService.OrderStatus[] STATUS_BY_CODE = {
+        BackendService.OrderStatus.PENDING,
+        BackendService.OrderStatus.PROCESSING,
+        BackendService.OrderStatus.COMPLETED,
+        BackendService.OrderStatus.CANCELLED
+    };
+
+    private DomainCodec() {
+    }
+
+    public static int statusCode(BackendService.OrderStatus status) {
+        for (int code = 0; code < STATUS_BY_CODE.length; code++) {
+            if (STATUS_BY_CODE[code] == status) {
+                return code;
+            }
+        }
+        throw new IllegalArgumentException("No code for status " + status);
+    }
+
+    /** Whether {@code code} names a status; {@link #statusOf} reads unknown codes as PENDING. */
+    public static boolean isStatusCode(int code) {
+        return code >= 0 && code < STATUS_BY_CODE.length;
+    }
+
+    public static BackendService.OrderStatus statusOf(int code) {
+        return isStatusCode(code) ? STATUS_BY_CODE[code] : BackendService.OrderStatus.PENDING;
+    }
+
+    public static void writeUser(Writer out, BackendService.User user) {
+        int mark = out.beginMessage();
+        out.stringField(USER_USERNAME, user.getUsername());
+        out.stringField(USER_PASSWORD, user.getPassword());
+        out.stringField(USER_EMAIL, user.getEmail());
+        out.stringField(USER_PHONE, user.getPhone());
+        out.endMessage(mark);
+    }
+
+    public static BackendService.User readUser(ByteBuffer in) {
+        String username = null;
+        String password = null;
+        String email = null;
+        String phone = null;
+        int end = messageEnd(in);
+        while (in.position() < end) {
+            int tag = (int) readVarint(in);
+            switch (tag >>> 3) {
+                case USER_USERNAME: username = readString(in); break;
+                case USER_PASSWORD: password = readString(in); break;
+                case USER_EMAIL: email = readString(in); break;
+                case USER_PHONE: phone = readString(in); break;
+                default: skip(in, tag & 7);
+            }
+        }
+        BackendService.User user = new BackendService.User(username, password, email);
+        user.setPhone(phone);
+        return user;
+    }
+
+    public static void writeProduct(Writer out, BackendService.Product product) {
+        int mark = out.beginMessage();
+        out.varintField(PRODUCT_ID, product.getId());
+        out.stringField(PRODUCT_NAME, product.getName());
+        out.doubleField(PRODUCT_PRICE, product.getPrice());
+        out.zigZagField(PRODUCT_QUANTITY, product.getQuantity());
+        out.zigZagField(PRODUCT_THRESHOLD, product.getReorderThreshold());
+        out.endMessage(mark);
+    }
+
+    public static BackendService.Product readProduct(ByteBuffer in) {
+        int id = 0;
+        String name = null;
+        double price = 0;
+        int quantity = 0;
+        int threshold = -1;
+        int end = messageEnd(in);
+        while (in.position() < end) {
+            int tag = (int) readVarint(in);
+            switch (tag >>> 3) {
+                case PRODUCT_ID: id = (int) readVarint(in); break;
+                case PRODUCT_NAME: name = readString(in); break;
+                case PRODUCT_PRICE: price = in.getDouble(); break;
+                case PRODUCT_QUANTITY: quantity = (int) readZigZag(in); break;
+                case PRODUCT_THRESHOLD: threshold = (int) readZigZag(in); break;
+                default: skip(in, tag & 7);
+            }
+        }
+        BackendService.Product product = new BackendService.Product(id, name, price, quantity);
+        if (threshold >= 0) {
+            product.setReorderThreshold(threshold);
+        }
+        return product;
+    }
+
+    public static void writeOrderItem(Writer out, BackendService.OrderItem item) {
+        int mark = out.beginMessage();
+        out.varintField(ITEM_PRODUCT_ID, item.getProductId());
+        out.zigZagField(ITEM_QUANTITY, item.getQuantity());
+        out.doubleField(ITEM_UNIT_PRICE, item.getUnitPrice());
+        out.endMessage(mark);
+    }
+
+    public static BackendService.OrderItem readOrderItem(ByteBuffer in) {
+        int productId = 0;
+        int quantity = 0;
+        double unitPrice = 0;
+        int end = messageEnd(in);
+        while (in.position() < end) {
+            int tag = (int) readVarint(in);
+            switch (tag >>> 3) {
+                case ITEM_PRODUCT_ID: productId = (int) readVarint(in); break;
+                case ITEM_QUANTITY: quantity = (int) readZigZag(in); break;
+                case ITEM_UNIT_PRICE: unitPrice = in.getDouble(); break;
+                default: skip(in, tag & 7);
+            }
+        }
+        return new BackendService.OrderItem(productId, quantity, unitPrice);
+    }
+
+    public static void writeOrder(Writer out, BackendService.Order order) {
+        writeOrder(out, order, order.getStatus());
+    }
+
+    /** Writes the order with the given status, e.g. one captured earlier. */
+    public static void writeOrder(Writer out, BackendService.Order order, BackendService.OrderStatus status) {
+        int mark = out.beginMessage();
+        out.varintField(ORDER_ID, order.getId());
+        out.stringField(ORDER_CUSTOMER, order.getCustomerName());
+        out.varintField(ORDER_DATE, order.getDate().getTime());
+        out.varintField(ORDER_STATUS, statusCode(status));
+        for (BackendService.OrderItem item : order.getItems()) {
+            out.tag(ORDER_ITEM, BYTES);
+            writeOrderItem(out, item);
+        }
+        out.endMessage(mark);
+    }
+
+    public static BackendService.Order readOrder(ByteBuffer in) {
+        long id = 0;
+        String customerName = null;
+        long time = 0;
+        BackendService.OrderStatus status = BackendService.OrderStatus.PENDING;
+        List<BackendService.OrderItem> items = new ArrayList<>(2);
+        int end = messageEnd(in);
+        while (in.position() < end) {
+            int tag = (int) readVarint(in);
+            switch (tag >>> 3) {
+                case ORDER_ID: id = readVarint(in); break;
+                case ORDER_CUSTOMER: customerName = readString(in); break;
+                case ORDER_DATE: time = readVarint(in); break;
+                case ORDER_STATUS: status = statusOf((int) readVarint(in)); break;
+                case ORDER_ITEM: items.add(readOrderItem(in)); break;
+                default: skip(in, tag & 7);
+            }
+        }
+        return new BackendService.Order(id, customerName, items, new Date(time), status);
+    }
+
+    public static long readVarint(ByteBuffer in) {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.get();
+            value |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return value;
+            }
+        }
+        throw new IllegalArgumentException("Malformed varint");
+    }
+
+    public static long readZigZag(ByteBuffer in) {
+        long raw = readVarint(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    /** Reads a varint-length-prefixed UTF-8 string. */
+    public static String readString(ByteBuffer in) {
+        int length = (int) readVarint(in);
+        String value;
+        if (in.hasArray()) {
+            value = new String(in.array(), in.arrayOffset() + in.position(), length, StandardCharsets.UTF_8);
+        } else {
+            value = StandardCharsets.UTF_8.decode(in.slice().limit(length)).toString();
+        }
+        in.position(in.position() + length);
+        return value;
+    }
+
+    /** Steps over one length-prefixed message without decoding it. */
+    public static void skipMessage(ByteBuffer in) {
+        in.position(messageEnd(in));
+    }
+
+    private static int messageEnd(ByteBuffer in) {
+        int length = (int) readVarint(in);
+        return in.position() + length;
+    }
+
+    private static void skip(ByteBuffer in, int wireType) {
+        switch (wireType) {
+            case VARINT: readVarint(in); break;
+            case FIXED64: in.position(in.position() + 8); break;
+            case BYTES:
+                int length = (int) readVarint(in);
+                in.position(in.position() + length);
+                break;
+            default: throw new IllegalArgumentException("Unknown wire type " + wireType);
+        }
+    }
+
+    /** Growable output buffer for codec messages and raw varints. */
+    public static final class Writer {
+        private byte[] buf;
+        private int pos;
+
+        public Writer() {
+            this(128);
+        }
+
+        public Writer(int capacity) {
+            buf = new byte[capacity];
+        }
+
+        public Writer writeByte(int value) {
+            ensure(1);
+            buf[pos++] = (byte) value;
+            return this;
+        }
+
+        public Writer writeVarint(long value) {
+            ensure(10);
+            while ((value & ~0x7FL) != 0) {
+                buf[pos++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[pos++] = (byte) value;
+            return this;
+        }
+
+        public Writer writeZigZag(long value) {
+            return writeVarint((value << 1) ^ (value >> 63));
+        }
+
+        public Writer writeDouble(double value) {
+            ensure(8);
+            ByteBuffer.wrap(buf, pos, 8).putDouble(value);
+            pos += 8;
+            return this;
+        }
+
+        /** Writes a non-null string; optional strings are omitted fields instead. */
+        public Writer writeString(String value) {
+            byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(bytes.length);
+            ensure(bytes.length);
+            System.arraycopy(bytes, 0, buf, pos, bytes.length);
+            pos += bytes.length;
+            return this;
+        }
+
+        public int size() {
+            return pos;
+        }
+
+        public void reset() {
+            pos = 0;
+        }
+
+        public byte[] toByteArray() {
+            return Arrays.copyOf(buf, pos);
+        }
+
+        /** Read-only view of the bytes written so far, without copying. */
+        public ByteBuffer buffer() {
+            return ByteBuffer.wrap(buf, 0, pos).asReadOnlyBuffer();
+        }
+
+        void tag(int field, int wireType) {
+            writeVarint((field << 3) | wireType);
+        }
+
+        void varintField(int field, long value) {
+            tag(field, VARINT);
+            writeVarint(value);
+        }
+
+        void zigZagField(int field, long value) {
+            tag(field, VARINT);
+            writeZigZag(value);
+        }
+
+        void doubleField(int field, double value) {
+            tag(field, FIXED64);
+            writeDouble(value);
+        }
+
+        void stringField(int field, String value) {
+            if (value != null) {
+                tag(field, BYTES);
+                writeString(value);
+            }
+        }
+
+        /** Reserves one byte for the message length; most messages fit. */
+        int beginMessage() {
+            ensure(1);
+            return pos++;
+        }
+
+        void endMessage(int mark) {
+            int length = pos - mark - 1;
+            int width = varintWidth(length);
+            if (width > 1) {
+                ensure(width - 1);
+                System.arraycopy(buf, mark + 1, buf, mark + width, length);
+                pos += width - 1;
+            }
+            int at = mark;
+            long value = length;
+            while ((value & ~0x7FL) != 0) {
+                buf[at++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            buf[at] = (byte) value;
+        }
+
+        private void ensure(int extra) {
+            if (pos + extra > buf.length) {
+                buf = Arrays.copyOf(buf, Math.max(buf.length << 1, pos + extra));
+            }
+        }
+
+        private static int varintWidth(long value) {
+            int width = 1;
+            while ((value & ~0x7FL) != 0) {
+                value >>>= 7;
+                width++;
+            }
+            return width;
+        }
+    }
+}
@@ -0,0 +1,347 @@
+package SadSystem;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Round-trip and throughput check for {@link DomainCodec}. It encodes
+ * users, products and orders and decodes them again from heap, read-only
+ * and direct buffers. It covers varints and message and string lengths
+ * that take one, two and three bytes, readers skipping fields they do not
+ * know, and the fixed status codes. Then it times encoding and decoding a
+ * batch of orders.
+ *
+ * The first argument is the number of orders to time (default 1M). Any
+ * mismatch ends the run with an exception.
+ *
+ * <pre>java -cp . SadSystem.DomainCodecCheck 1000000</pre>
+ */
+public class DomainCodecCheck {
+
+    private static final int[] LENGTHS = {0, 1, 127, 128, 200, 16_383, 16_384, 20_000, 70_000};
+    private static final long[] VARINTS = {
+        0, 1, 127, 128, 16_383, 16_384, 2_097_151, 2_097_152, Integer.MAX_VALUE, 1L << 35, Long.MAX_VALUE, -1
+    };
+    private static final int ROUNDS = 5;
+
+    private static int checks;
+
+    public static void main(String[] args) {
+        int orders = args.length > 0 ? Integer.parseInt(args[0].replace("_", "")) : 1_000_000;
+
+        checkVarints();
+        checkUsers();
+        checkProducts();
+        checkOrders();
+        checkStatusCodes();
+        checkUnknownFields();
+        checkMissingFields();
+        checkSkipMessage();
+        System.out.println(checks + " checks passed");
+
+        benchmark(orders);
+    }
+
+    private static void checkVarints() {
+        for (long value : VARINTS) {
+            DomainCodec.Writer out = new DomainCodec.Writer(1);
+            out.writeVarint(value).writeZigZag(value).writeZigZag(-value);
+            for (ByteBuffer in : buffers(out)) {
+                check(DomainCodec.readVarint(in) == value, "varint " + value);
+                check(DomainCodec.readZigZag(in) == value, "zig-zag " + value);
+                check(DomainCodec.readZigZag(in) == -value, "zig-zag " + -value);
+                check(!in.hasRemaining(), "varint " + value + " left bytes behind");
+            }
+        }
+        DomainCodec.Writer out = new DomainCodec.Writer();
+        out.writeZigZag(Long.MIN_VALUE);
+        check(DomainCodec.readZigZag(out.buffer()) == Long.MIN_VALUE, "zig-zag " + Long.MIN_VALUE);
+    }
+
+    private static void checkUsers() {
+        for (int length : LENGTHS) {
+            BackendService.User user = new BackendService.User(text(length, 'u'), text(length, 'p'), "e@x.org");
+            user.setPhone(text(length / 2, '\u00e9'));
+            DomainCodec.Writer out = new DomainCodec.Writer(16);
+            DomainCodec.writeUser(out, user);
+            for (ByteBuffer in : buffers(out)) {
+                BackendService.User copy = DomainCodec.readUser(in);
+                check(copy.getUsername().equals(user.getUsername()), "user name, length " + length);
+                check(copy.getPassword().equals(user.getPassword()), "user password, length " + length);
+                check(copy.getEmail().equals(user.getEmail()), "user email, length " + length);
+                check(copy.getPhone().equals(user.getPhone()), "user phone, length " + length);
+                check(!in.hasRemaining(), "user, length " + length + " left bytes behind");
+            }
+        }
+    }
+
+    private static void checkProducts() {
+        int[] quantities = {0, 1, -1, 127, 128, Integer.MAX_VALUE, Integer.MIN_VALUE};
+        for (int length : LENGTHS) {
+            for (int quantity : quantities) {
+                BackendService.Product product =
+                    new BackendService.Product(Integer.MAX_VALUE - length, text(length, '\u20ac'), 12.34 * length, quantity);
+                product.setReorderThreshold(length);
+                DomainCodec.Writer out = new DomainCodec.Writer(4);
+                DomainCodec.writeProduct(out, product);
+                for (ByteBuffer in : buffers(out)) {
+                    checkSame(DomainCodec.readProduct(in), product);
+                    check(!in.hasRemaining(), "product, length " + length + " left bytes behind");
+                }
+            }
+        }
+    }
+
+    private static void checkOrders() {
+        // Item counts chosen so the order message length needs one, two and three bytes.
+        for (int items : new int[] {0, 1, 4, 10, 600, 7_000}) {
+            for (BackendService.OrderStatus status : BackendService.OrderStatus.values()) {
+                BackendService.Order order = order(items, items, status);
+                DomainCodec.Writer out = new DomainCodec.Writer(8);
+                DomainCodec.writeOrder(out, order);
+                for (ByteBuffer in : buffers(out)) {
+                    checkSame(DomainCodec.readOrder(in), order, status);
+                    check(!in.hasRemaining(), "order with " + items + " items left bytes behind");
+                }
+            }
+        }
+        BackendService.Order order = order(42, 3, BackendService.OrderStatus.PROCESSING);
+        DomainCodec.Writer out = new DomainCodec.Writer();
+        DomainCodec.writeOrder(out, order, BackendService.OrderStatus.CANCELLED);
+        checkSame(DomainCodec.readOrder(out.buffer()), order, BackendService.OrderStatus.CANCELLED);
+    }
+
+    /** Codes are part of the stored format and must never move. */
+    private static void checkStatusCodes() {
+        BackendService.OrderStatus[] pinned = {
+            BackendService.OrderStatus.PENDING,
+            BackendService.OrderStatus.PROCESSING,
+            BackendService.OrderStatus.COMPLETED,
+            BackendService.OrderStatus.CANCELLED
+        };
+        for (int code = 0; code < pinned.length; code++) {
+            check(DomainCodec.statusCode(pinned[code]) == code, pinned[code] + " is no longer code " + code);
+            check(DomainCodec.statusOf(code) == pinned[code], "code " + code + " is no longer " + pinned[code]);
+        }
+        for (BackendService.OrderStatus status : BackendService.OrderStatus.values()) {
+            check(DomainCodec.statusOf(DomainCodec.statusCode(status)) == status, "status " + status);
+        }
+        check(DomainCodec.statusOf(-1) == BackendService.OrderStatus.PENDING, "negative status code");
+        check(DomainCodec.statusOf(99) == BackendService.OrderStatus.PENDING, "unknown status code");
+
+        // An order written by a newer version with a status this one does not know.
+        DomainCodec.Writer out = new DomainCodec.Writer();
+        int mark = out.beginMessage();
+        out.varintField(1, 7);
+        out.varintField(4, 99);
+        out.endMessage(mark);
+        check(DomainCodec.readOrder(out.buffer()).getStatus() == BackendService.OrderStatus.PENDING,
+            "order with unknown status code");
+    }
+
+    /** Fields from a newer writer, of every wire type, before, between and after the known ones. */
+    private static void checkUnknownFields() {
+        BackendService.Product product = new BackendService.Product(77, text(300, 'n'), 9.5, -3);
+        product.setReorderThreshold(12);
+
+        DomainCodec.Writer out = new DomainCodec.Writer(2);
+        int mark = out.beginMessage();
+        out.varintField(15, Long.MAX_VALUE);
+        out.varintField(1, product.getId());
+        out.doubleField(16, Double.NaN);
+        out.stringField(2, product.getName());
+        out.stringField(2_000, text(20_000, 'x'));
+        out.doubleField(3, product.getPrice());
+        out.tag(17, 2);
+        int nested = out.beginMessage();
+        out.varintField(1, 1);
+        out.stringField(2, text(200, 'y'));
+        out.endMessage(nested);
+        out.zigZagField(4, product.getQuantity());
+        out.zigZagField(5, product.getReorderThreshold());
+        out.zigZagField(300_000, -5);
+        out.endMessage(mark);
+        out.writeByte(0x5A);
+
+        for (ByteBuffer in : buffers(out)) {
+            checkSame(DomainCodec.readProduct(in), product);
+            check(in.remaining() == 1 && in.get() == 0x5A, "unknown fields: reader stopped at the wrong place");
+        }
+
+        BackendService.Order order = order(9, 2, BackendService.OrderStatus.COMPLETED);
+        out = new DomainCodec.Writer();
+        mark = out.beginMessage();
+        out.varintField(1, order.getId());
+        out.stringField(2, order.getCustomerName());
+        out.varintField(3, order.getDate().getTime());
+        out.varintField(4, DomainCodec.statusCode(order.getStatus()));
+        for (BackendService.OrderItem item : order.getItems()) {
+            out.tag(5, 2);
+            int itemMark = out.beginMessage();
+            out.varintField(1, item.getProductId());
+            out.stringField(9, "gift wrap");
+            out.zigZagField(2, item.getQuantity());
+            out.doubleField(3, item.getUnitPrice());
+            out.doubleField(10, 0.5);
+            out.endMessage(itemMark);
+        }
+        out.stringField(6, "shipping note");
+        out.endMessage(mark);
+        for (ByteBuffer in : buffers(out)) {
+            checkSame(DomainCodec.readOrder(in), order, order.getStatus());
+            check(!in.hasRemaining(), "order with unknown fields left bytes behind");
+        }
+    }
+
+    /** Fields an older writer did not have come back as defaults. */
+    private static void checkMissingFields() {
+        DomainCodec.Writer out = new DomainCodec.Writer();
+        int mark = out.beginMessage();
+        out.varintField(1, 5);
+        out.stringField(2, "Old product");
+        out.endMessage(mark);
+        BackendService.Product product = DomainCodec.readProduct(out.buffer());
+        BackendService.Product fresh = new BackendService.Product(5, "Old product", 0, 0);
+        checkSame(product, fresh);
+
+        out.reset();
+        mark = out.beginMessage();
+        out.endMessage(mark);
+        BackendService.Order order = DomainCodec.readOrder(out.buffer());
+        check(order.getId() == 0 && order.getItems().isEmpty(), "empty order");
+        check(order.getStatus() == BackendService.OrderStatus.PENDING, "empty order status");
+    }
+
+    private static void checkSkipMessage() {
+        DomainCodec.Writer out = new DomainCodec.Writer(1);
+        List<BackendService.Order> orders = new ArrayList<>();
+        for (int items : new int[] {0, 1, 20, 3_000}) {
+            BackendService.Order order = order(items, items, BackendService.OrderStatus.PROCESSING);
+            orders.add(order);
+            DomainCodec.writeOrder(out, order);
+        }
+        for (ByteBuffer in : buffers(out)) {
+            for (int skipped = 0; skipped < orders.size(); skipped++) {
+                ByteBuffer view = in.duplicate();
+                for (int i = 0; i < skipped; i++) {
+                    DomainCodec.skipMessage(view);
+                }
+                BackendService.Order order = orders.get(skipped);
+                checkSame(DomainCodec.readOrder(view), order, order.getStatus());
+            }
+        }
+    }
+
+    /** Times encoding and decoding {@code count} orders, in heap and direct buffers. */
+    private static void benchmark(int count) {
+        Random random = new Random(42);
+        BackendService.OrderStatus[] statuses = BackendService.OrderStatus.values();
+        List<BackendService.Order> orders = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            orders.add(order(i + 1, 1 + random.nextInt(4), statuses[random.nextInt(statuses.length)]));
+        }
+
+        DomainCodec.Writer out = new DomainCodec.Writer(count * 64);
+        long encodeNanos = Long.MAX_VALUE;
+        for (int round = 0; round < ROUNDS; round++) {
+            out.reset();
+            long started = System.nanoTime();
+            for (BackendService.Order order : orders) {
+                DomainCodec.writeOrder(out, order);
+            }
+            encodeNanos = Math.min(encodeNanos, System.nanoTime() - started);
+        }
+        byte[] bytes = out.toByteArray();
+        ByteBuffer direct = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+
+        long heapNanos = Long.MAX_VALUE;
+        long directNanos = Long.MAX_VALUE;
+        long checksum = 0;
+        for (int round = 0; round < ROUNDS; round++) {
+            long started = System.nanoTime();
+            checksum += decodeAll(ByteBuffer.wrap(bytes), count);
+            heapNanos = Math.min(heapNanos, System.nanoTime() - started);
+
+            started = System.nanoTime();
+            checksum += decodeAll(direct.duplicate(), count);
+            directNanos = Math.min(directNanos, System.nanoTime() - started);
+        }
+
+        System.out.printf("%,d orders, %,d bytes (%.1f bytes/order), checksum %d%n",
+            count, bytes.length, bytes.length / (double) count, checksum);
+        report("encode", count, bytes.length, encodeNanos);
+        report("decode heap", count, bytes.length, heapNanos);
+        report("decode direct", count, bytes.length, directNanos);
+    }
+
+    private static long decodeAll(ByteBuffer in, int count) {
+        long sum = 0;
+        for (int i = 0; i < count; i++) {
+            BackendService.Order order = DomainCodec.readOrder(in);
+            sum += order.getId() + order.getItems().size();
+        }
+        check(!in.hasRemaining(), "benchmark decode left bytes behind");
+        return sum;
+    }
+
+    private static void report(String what, int count, long bytes, long nanos) {
+        System.out.printf("%-14s %,10d ms %,14d orders/s %10.1f MB/s%n", what, nanos / 1_000_000,
+            (long) (count * 1e9 / nanos), bytes * 1e9 / nanos / 1048576);
+    }
+
+    /** The written bytes as a heap buffer, the writer's read-only view and a direct buffer. */
+    private static List<ByteBuffer> buffers(DomainCodec.Writer out) {
+        byte[] bytes = out.toByteArray();
+        List<ByteBuffer> buffers = new ArrayList<>(3);
+        buffers.add(ByteBuffer.wrap(bytes));
+        buffers.add(out.buffer());
+        buffers.add(ByteBuffer.allocateDirect(bytes.length).put(bytes).flip());
+        return buffers;
+    }
+
+    private static BackendService.Order order(long id, int items, BackendService.OrderStatus status) {
+        List<BackendService.OrderItem> lines = new ArrayList<>(items);
+        for (int i = 0; i < items; i++) {
+            lines.add(new BackendService.OrderItem(i * 131, i % 3 == 2 ? -i : i + 1, i * 0.25));
+        }
+        return new BackendService.Order(id, "Customer " + id, lines, new Date(1_700_000_000_000L + id), status);
+    }
+
+    private static String text(int length, char c) {
+        return String.valueOf(c).repeat(length);
+    }
+
+    private static void checkSame(BackendService.Product copy, BackendService.Product product) {
+        check(copy.getId() == product.getId(), "product " + product.getId() + " id");
+        check(copy.getName().equals(product.getName()), "product " + product.getId() + " name");
+        check(Double.compare(copy.getPrice(), product.getPrice()) == 0, "product " + product.getId() + " price");
+        check(copy.getQuantity() == product.getQuantity(), "product " + product.getId() + " quantity");
+        check(copy.getReorderThreshold() == product.getReorderThreshold(), "product " + product.getId() + " threshold");
+    }
+
+    private static void checkSame(BackendService.Order copy, BackendService.Order order, BackendService.OrderStatus status) {
+        check(copy.getId() == order.getId(), "order " + order.getId() + " id");
+        check(copy.getCustomerName().equals(order.getCustomerName()), "order " + order.getId() + " customer");
+        check(copy.getDate().equals(order.getDate()), "order " + order.getId() + " date");
+        check(copy.getStatus() == status, "order " + order.getId() + " status");
+        List<BackendService.OrderItem> items = order.getItems();
+        List<BackendService.OrderItem> copied = copy.getItems();
+        check(copied.size() == items.size(), "order " + order.getId() + " item count");
+        for (int i = 0; i < items.size(); i++) {
+            check(copied.get(i).getProductId() == items.get(i).getProductId()
+                    && copied.get(i).getQuantity() == items.get(i).getQuantity()
+                    && Double.compare(copied.get(i).getUnitPrice(), items.get(i).getUnitPrice()) == 0,
+                "order " + order.getId() + " item " + i);
+        }
+    }
+
+    private static void check(boolean ok, String what) {
+        checks++;
+        if (!ok) {
+            throw new IllegalStateException("Mismatch: " + what);
+        }
+    }
+}
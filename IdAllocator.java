@@ -0,0 +1,113 @@
+package SadSystem;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongConsumer;
+
+/**
+ * Hi/lo id allocator. Ids are leased from a shared high-water mark in blocks,
+ * and each block is handed out by one of a few stripes chosen by thread, so
+ * concurrent writers only touch the shared counter once per block instead of
+ * on every insert. Ids are unique but only roughly ordered across threads.
+ *
+ * The high-water mark is the only state that has to be persisted: on restart
+ * call {@link #advancePast} with the largest stored id (or the recorded high
+ * water) before handing out new ids. {@link #reserveWith} does that
+ * bookkeeping: ids are reserved ahead in steps, and each reservation is
+ * stored before any id beyond the previous one is handed out. On a clean
+ * shutdown {@link #trimReservation} gives back the ids reserved but never
+ * leased, so only a crash skips ids.
+ */
+public class IdAllocator {
+
+    private static final class Block {
+        long next;
+        long end;
+    }
+
+    private final AtomicLong highWater;
+    private final int blockSize;
+    private final Block[] stripes;
+    private final int mask;
+    private LongConsumer reservations;
+    private long reserveStep;
+    private volatile long reserved = Long.MAX_VALUE;
+
+    public IdAllocator(long firstId, int blockSize) {
+        this.highWater = new AtomicLong(firstId);
+        this.blockSize = blockSize;
+        int count = Integer.highestOneBit(Math.max(1, Runtime.getRuntime().availableProcessors() - 1)) << 1;
+        this.stripes = new Block[count];
+        for (int i = 0; i < count; i++) {
+            stripes[i] = new Block();
+        }
+        this.mask = count - 1;
+    }
+
+    public long next() {
+        Block block = stripes[(int) (Thread.currentThread().getId() & mask)];
+        synchronized (block) {
+            if (block.next == block.end) {
+                block.next = highWater.getAndAdd(blockSize);
+                block.end = block.next + blockSize;
+                if (block.end > reserved) {
+                    reserve(block.end);
+                }
+            }
+            return block.next++;
+        }
+    }
+
+    public int nextInt() {
+        return Math.toIntExact(next());
+    }
+
+    /**
+     * Makes sure no id up to and including {@code id} is handed out again.
+     * Blocks leased before the call are discarded.
+     */
+    public void advancePast(long id) {
+        highWater.accumulateAndGet(id + 1, Math::max);
+        for (Block block : stripes) {
+            synchronized (block) {
+                block.next = block.end;
+            }
+        }
+    }
+
+    public long getHighWater() {
+        return highWater.get();
+    }
+
+    /**
+     * From now on, passes {@code store} an exclusive upper bound on the ids
+     * handed out whenever the last one is about to be exceeded, {@code step}
+     * ids at a time. The store must make it durable before returning; the
+     * bound it last stored is what to pass to {@link #advancePast} (minus
+     * one) on restart.
+     */
+    public synchronized void reserveWith(LongConsumer store, long step) {
+        reservations = store;
+        reserveStep = step;
+        reserved = highWater.get();
+    }
+
+    /**
+     * Stores the high-water mark itself as the bound. Ids leased after the
+     * call are reserved again as usual.
+     */
+    public synchronized void trimReservation() {
+        if (reservations != null && reserved > highWater.get()) {
+            long bound = highWater.get();
+            reservations.accept(bound);
+            reserved = bound;
+        }
+    }
+
+    private synchronized void reserve(long end) {
+        if (end > reserved) {
+            long bound = Math.max(end, highWater.get()) + reserveStep;
+            reservations.accept(bound);
+            reserved = bound;
+        }
+    }
+}
@@ -7,7 +7,6 @@ import java.awt.*;
 public class Login extends JFrame {
     private JTextField usernameField;
     private JPasswordField passwordField;
-    private BackendService backend;
     private JButton signIn;
 
     public Login() {
@@ -17,8 +16,6 @@ public class Login extends JFrame {
         setLocationRelativeTo(null);
         setIconImage(new ImageIcon("logo/Inventory.png").getImage());
         
-        backend = BackendService.getInstance();
-
         GradientPanel bg = new GradientPanel(new Color(102, 78, 255), new Color(72, 149, 239));
         bg.setLayout(new GridBagLayout());
         setContentPane(bg);
@@ -111,25 +108,27 @@ public class Login extends JFrame {
         
         signIn.setEnabled(false);
         
-        new Thread(() -> {
-            boolean success = backend.login(username, password);
-            
-            SwingUtilities.invokeLater(() -> {
-                if (success) {
-                    setVisible(false);
-                    MainFrame main = new MainFrame();
-                    main.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
-                    main.setVisible(true);
-                    dispose();
-                } else {
-                    JOptionPane.showMessageDialog(Login.this, 
-                        "Invalid username or password.", 
-                        "Login Failed", 
-                        JOptionPane.ERROR_MESSAGE);
-                    signIn.setEnabled(true);
-                }
-            });
-        }).start();
+        AsyncBackend.getInstance().call(b -> b.login(username, password)).whenComplete((session, error) -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(Login.this, 
+                    "Could not sign in: " + error.getMessage(), 
+                    "Login Failed", 
+                    JOptionPane.ERROR_MESSAGE);
+                signIn.setEnabled(true);
+            } else if (session != null) {
+                setVisible(false);
+                MainFrame main = new MainFrame(session);
+                main.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+                main.setVisible(true);
+                dispose();
+            } else {
+                JOptionPane.showMessageDialog(Login.this, 
+                    "Invalid username or password.", 
+                    "Login Failed", 
+                    JOptionPane.ERROR_MESSAGE);
+                signIn.setEnabled(true);
+            }
+        });
     }
 
     private void stylePrimaryButton(JButton button) {
@@ -0,0 +1,430 @@
+package SadSystem;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Log-structured engine that keeps records on disk instead of the heap.
+ * Users, products and orders each live in an {@link LsmTree} keyed by id
+ * (users by a surrogate key, since they are looked up by a name that can
+ * change). Writes go to the write-ahead log and then into the memtables,
+ * both under one lock so the log is in apply order.
+ *
+ * Once the memtables pass {@code ims.lsm.memtableBytes} they are frozen,
+ * the log is rolled and a maintenance thread writes them out as sorted
+ * runs; writers carry on in fresh memtables meanwhile. The MANIFEST file
+ * names the live runs of every tree and the log position they cover, so
+ * recovery opens those runs and replays only the log after it. When a tree
+ * reaches {@code ims.lsm.maxRuns} runs the same thread merges them into
+ * one, dropping deleted and overwritten records. If a flush or compaction
+ * fails, every later write fails with its error.
+ *
+ * Files live in the {@code lsm} subdirectory of the data directory, apart
+ * from the memory engine's, so switching engines never mixes their logs.
+ */
+public class LsmStorageEngine implements StorageEngine {
+
+    private static final String MANIFEST = "MANIFEST";
+    private static final int MANIFEST_MAGIC = 0x494D534D;
+    private static final int MANIFEST_VERSION = 1;
+
+    private final Path dir;
+    private final WriteAheadLog wal;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final LsmTree userTree;
+    private final LsmTree productTree;
+    private final LsmTree orderTree;
+    private final List<LsmTree> trees;
+    private final Map<String, Long> userKeys = new HashMap<>();
+    private long nextUserKey = 1;
+    private final Applier applier = new Applier();
+    private RecoveryStats recoveryStats = RecoveryStats.NONE;
+    private final long memtableLimit = Long.getLong("ims.lsm.memtableBytes", 4 << 20);
+    private final int maxRuns = Integer.getInteger("ims.lsm.maxRuns", 4);
+    private final ExecutorService maintenance;
+    private boolean flushPending;
+    private volatile IOException maintenanceFailure;
+    private long flushPosition;
+    private long manifestPosition;
+    private long nextRunNumber = 1;
+
+    private LsmStorageEngine(Path dir, WriteAheadLog wal) {
+        this.dir = dir;
+        this.wal = wal;
+        userTree = new LsmTree("users", dir);
+        productTree = new LsmTree("products", dir);
+        orderTree = new LsmTree("orders", dir);
+        trees = Arrays.asList(userTree, productTree, orderTree);
+        maintenance = Executors.newSingleThreadExecutor(r -> {
+            Thread t = new Thread(r, "lsm-maintenance");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    public static LsmStorageEngine open(Path dataDir, WriteAheadLog.Durability durability, long lingerMillis)
+            throws IOException {
+        Path dir = dataDir.resolve("lsm");
+        Files.createDirectories(dir);
+        LsmStorageEngine engine = new LsmStorageEngine(dir, new WriteAheadLog(dir, durability, lingerMillis));
+        engine.recover();
+        return engine;
+    }
+
+    private void recover() throws IOException {
+        readManifest();
+        userTree.scan((key, value) -> {
+            userKeys.put(lookupKey(DomainCodec.readUser(ByteBuffer.wrap(value)).getUsername()), key);
+            nextUserKey = Math.max(nextUserKey, key + 1);
+            return true;
+        });
+        PartitionedReplay replay = new PartitionedReplay(applier, PartitionedReplay.configuredThreads());
+        long discarded = 0;
+        try {
+            discarded = wal.replay(manifestPosition, replay);
+        } finally {
+            recoveryStats = replay.finish(discarded);
+        }
+    }
+
+    private final UserRepository userRepository = new UserRepository() {
+        @Override
+        public void forEach(Consumer<BackendService.User> action) {
+            userTree.scan((key, value) -> {
+                action.accept(DomainCodec.readUser(ByteBuffer.wrap(value)));
+                return true;
+            });
+        }
+    };
+
+    private final ProductRepository productRepository = new ProductRepository() {
+        @Override
+        public void forEach(Consumer<BackendService.Product> action) {
+            productTree.scan((key, value) -> {
+                action.accept(DomainCodec.readProduct(ByteBuffer.wrap(value)));
+                return true;
+            });
+        }
+    };
+
+    private final OrderRepository orderRepository = new OrderRepository() {
+        @Override
+        public void forEach(Consumer<BackendService.Order> action) {
+            orderTree.scan((key, value) -> {
+                action.accept(DomainCodec.readOrder(ByteBuffer.wrap(value)));
+                return true;
+            });
+        }
+    };
+
+    @Override
+    public UserRepository users() {
+        return userRepository;
+    }
+
+    @Override
+    public ProductRepository products() {
+        return productRepository;
+    }
+
+    @Override
+    public OrderRepository orders() {
+        return orderRepository;
+    }
+
+    @Override
+    public void write(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (maintenanceFailure != null) {
+            throw new UncheckedIOException("Storage maintenance failed", maintenanceFailure);
+        }
+        lock.lock();
+        try {
+            wal.append(batch.toByteArray());
+            batch.replay(applier);
+            if (!flushPending && memtableBytes() >= memtableLimit) {
+                scheduleFlush();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RecoveryStats recoveryStats() {
+        return recoveryStats;
+    }
+
+    @Override
+    public void sync() {
+        wal.sync();
+    }
+
+    /** Flushes the memtables now and waits for the runs to be written. */
+    @Override
+    public boolean checkpoint() {
+        Future<?> flush;
+        lock.lock();
+        try {
+            if (flushPending || memtableBytes() == 0) {
+                return false;
+            }
+            flush = scheduleFlush();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flush.get();
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof RuntimeException ? (RuntimeException) cause : new IllegalStateException(cause);
+        }
+    }
+
+    @Override
+    public void close() {
+        maintenance.shutdown();
+        try {
+            maintenance.awaitTermination(1, TimeUnit.MINUTES);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        wal.close();
+    }
+
+    private long memtableBytes() {
+        long total = 0;
+        for (LsmTree tree : trees) {
+            total += tree.memtableBytes();
+        }
+        return total;
+    }
+
+    /** Freezes the memtables at the current log position; caller holds the lock. */
+    private Future<?> scheduleFlush() {
+        for (LsmTree tree : trees) {
+            tree.freeze();
+        }
+        flushPosition = wal.position();
+        flushPending = true;
+        wal.roll();
+        return maintenance.submit(this::flush);
+    }
+
+    private void flush() {
+        try {
+            for (LsmTree tree : trees) {
+                LsmTree.SortedRun run = tree.writeFrozen(nextRunNumber);
+                if (run != null) {
+                    nextRunNumber++;
+                    tree.installFlushed(run);
+                }
+            }
+            writeManifest(flushPosition);
+            wal.truncateBefore(flushPosition);
+        } catch (IOException e) {
+            // The frozen memtables stay readable and the log still holds them; stop flushing.
+            maintenanceFailure = e;
+            throw new UncheckedIOException("Cannot flush memtables", e);
+        }
+        lock.lock();
+        try {
+            flushPending = false;
+        } finally {
+            lock.unlock();
+        }
+        compactIfNeeded();
+    }
+
+    private void compactIfNeeded() {
+        for (LsmTree tree : trees) {
+            if (tree.runs().size() < maxRuns) {
+                continue;
+            }
+            try {
+                List<LsmTree.SortedRun> replaced = tree.compact(nextRunNumber++);
+                writeManifest(manifestPosition);
+                for (LsmTree.SortedRun run : replaced) {
+                    Files.deleteIfExists(run.file());
+                }
+            } catch (IOException e) {
+                maintenanceFailure = e;
+                throw new UncheckedIOException("Cannot compact runs", e);
+            }
+        }
+    }
+
+    private void writeManifest(long position) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeInt(MANIFEST_VERSION);
+        out.writeLong(position);
+        out.writeLong(nextRunNumber);
+        for (LsmTree tree : trees) {
+            List<LsmTree.SortedRun> runs = tree.runs();
+            out.writeInt(runs.size());
+            for (LsmTree.SortedRun run : runs) {
+                out.writeLong(run.number());
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path file = dir.resolve(MANIFEST);
+        Path temp = dir.resolve(MANIFEST + ".tmp");
+        Files.write(temp, bytes.toByteArray());
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        manifestPosition = position;
+    }
+
+    /** Opens the runs the manifest lists and deletes any other run files. */
+    private void readManifest() throws IOException {
+        Set<Path> live = new HashSet<>();
+        Path file = dir.resolve(MANIFEST);
+        if (Files.exists(file)) {
+            ByteBuffer in = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (in.limit() < 28 || in.getInt(0) != MANIFEST_MAGIC) {
+                throw new IOException("Not a manifest: " + file);
+            }
+            if (in.getInt(4) != MANIFEST_VERSION) {
+                throw new IOException("Unsupported manifest version " + in.getInt(4));
+            }
+            CRC32 crc = new CRC32();
+            crc.update(in.duplicate().limit(in.limit() - 4));
+            if ((int) crc.getValue() != in.getInt(in.limit() - 4)) {
+                throw new IOException("Manifest checksum mismatch: " + file);
+            }
+            in.position(8);
+            manifestPosition = in.getLong();
+            nextRunNumber = in.getLong();
+            for (LsmTree tree : trees) {
+                long[] runNumbers = new long[in.getInt()];
+                for (int i = 0; i < runNumbers.length; i++) {
+                    runNumbers[i] = in.getLong();
+                    live.add(tree.runPath(runNumbers[i]));
+                }
+                tree.openRuns(runNumbers);
+            }
+        }
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, "*.{run,tmp}")) {
+            for (Path path : stream) {
+                if (!live.contains(path)) {
+                    Files.delete(path);
+                }
+            }
+        }
+    }
+
+    private static byte[] encode(BackendService.User user) {
+        DomainCodec.Writer out = new DomainCodec.Writer();
+        DomainCodec.writeUser(out, user);
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(BackendService.Product product) {
+        DomainCodec.Writer out = new DomainCodec.Writer();
+        DomainCodec.writeProduct(out, product);
+        return out.toByteArray();
+    }
+
+    private static byte[] encode(BackendService.Order order) {
+        DomainCodec.Writer out = new DomainCodec.Writer();
+        DomainCodec.writeOrder(out, order);
+        return out.toByteArray();
+    }
+
+    private static String lookupKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /** Applies records to the memtables; callers hold the lock (or are still recovering). */
+    private final class Applier implements WriteBatch.Handler {
+        @Override
+        public void user(String previousName, BackendService.User user) {
+            Long key = userKeys.remove(lookupKey(previousName));
+            if (key == null) {
+                key = userKeys.get(lookupKey(user.getUsername()));
+            }
+            if (key == null) {
+                key = nextUserKey++;
+            }
+            userKeys.put(lookupKey(user.getUsername()), key);
+            userTree.put(key, encode(user));
+        }
+
+        @Override
+        public void product(BackendService.Product product) {
+            productTree.put(product.getId(), encode(product));
+        }
+
+        @Override
+        public void productDeleted(int productId) {
+            productTree.delete(productId);
+        }
+
+        @Override
+        public void stock(int productId, int delta) {
+            byte[] value = productTree.get(productId);
+            if (value != null) {
+                BackendService.Product product = DomainCodec.readProduct(ByteBuffer.wrap(value));
+                product.setQuantity(product.getQuantity() + delta);
+                productTree.put(productId, encode(product));
+            }
+        }
+
+        @Override
+        public void order(BackendService.Order order) {
+            orderTree.put(order.getId(), encode(order));
+        }
+
+        @Override
+        public void orderStatus(long orderId, BackendService.OrderStatus status) {
+            byte[] value = orderTree.get(orderId);
+            if (value != null) {
+                BackendService.Order order = DomainCodec.readOrder(ByteBuffer.wrap(value));
+                order.setStatus(status);
+                orderTree.put(orderId, encode(order));
+            }
+        }
+
+        @Override
+        public void orderDeleted(long orderId) {
+            orderTree.delete(orderId);
+        }
+    }
+}
@@ -0,0 +1,416 @@
+package SadSystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * One keyspace of the log-structured engine: a mutable memtable, at most
+ * one frozen memtable that is being flushed, and a stack of immutable
+ * sorted runs on disk, newest first. A key's current value is the first
+ * one found in that order; deletes are tombstones that shadow older runs
+ * until a compaction drops them.
+ *
+ * Mutations and the freeze/install/compact steps are driven by
+ * {@link LsmStorageEngine}, which serializes writers and runs flushes and
+ * compactions on a single maintenance thread. Readers take no lock: the
+ * fields are volatile and are always published newest-data-first.
+ *
+ * A run file is a sequence of {@code [key][length][value]} entries in key
+ * order (length -1 marks a tombstone), followed by a dense index of keys
+ * and entry offsets, a footer and a CRC32 of the whole file. Runs are
+ * memory-mapped, so lookups binary-search the on-disk index.
+ */
+class LsmTree {
+
+    static final byte[] TOMBSTONE = new byte[0];
+    private static final int RUN_MAGIC = 0x494D5352;
+    private static final int RUN_VERSION = 1;
+    private static final int FOOTER = 16;
+    private static final int ENTRY_OVERHEAD = 64;
+
+    private final String name;
+    private final Path dir;
+    private volatile ConcurrentSkipListMap<Long, byte[]> memtable = new ConcurrentSkipListMap<>();
+    private volatile ConcurrentSkipListMap<Long, byte[]> frozen;
+    private volatile List<SortedRun> runs = Collections.emptyList();
+    private long memtableBytes;
+
+    LsmTree(String name, Path dir) {
+        this.name = name;
+        this.dir = dir;
+    }
+
+    /** Returns the value stored under {@code key}, or null if there is none. */
+    byte[] get(long key) {
+        byte[] value = memtable.get(key);
+        if (value == null) {
+            ConcurrentSkipListMap<Long, byte[]> flushing = frozen;
+            if (flushing != null) {
+                value = flushing.get(key);
+            }
+        }
+        if (value == null) {
+            for (SortedRun run : runs) {
+                value = run.get(key);
+                if (value != null) {
+                    break;
+                }
+            }
+        }
+        return value == TOMBSTONE ? null : value;
+    }
+
+    void put(long key, byte[] value) {
+        memtable.put(key, value);
+        memtableBytes += value.length + ENTRY_OVERHEAD;
+    }
+
+    void delete(long key) {
+        put(key, TOMBSTONE);
+    }
+
+    long memtableBytes() {
+        return memtableBytes;
+    }
+
+    /**
+     * Visits every live entry in key order until the visitor returns
+     * false.
+     */
+    void scan(EntryVisitor visitor) {
+        List<Cursor> sources = new ArrayList<>();
+        sources.add(new MapCursor(memtable));
+        ConcurrentSkipListMap<Long, byte[]> flushing = frozen;
+        if (flushing != null) {
+            sources.add(new MapCursor(flushing));
+        }
+        for (SortedRun run : runs) {
+            sources.add(run.cursor());
+        }
+        Cursor merged = merge(sources);
+        while (merged.next()) {
+            if (!visitor.visit(merged.key(), merged.value())) {
+                return;
+            }
+        }
+    }
+
+    List<SortedRun> runs() {
+        return runs;
+    }
+
+    /** Turns the memtable into the frozen one. Returns false if it was empty. */
+    boolean freeze() {
+        if (memtable.isEmpty()) {
+            return false;
+        }
+        frozen = memtable;
+        memtable = new ConcurrentSkipListMap<>();
+        memtableBytes = 0;
+        return true;
+    }
+
+    /** Writes the frozen memtable out as a run, or returns null if none is frozen. */
+    SortedRun writeFrozen(long runNumber) throws IOException {
+        ConcurrentSkipListMap<Long, byte[]> flushing = frozen;
+        return flushing == null ? null : SortedRun.write(runPath(runNumber), runNumber, new MapCursor(flushing));
+    }
+
+    /** Makes a flushed run visible and drops the frozen memtable it came from. */
+    void installFlushed(SortedRun run) {
+        List<SortedRun> next = new ArrayList<>(runs.size() + 1);
+        next.add(run);
+        next.addAll(runs);
+        runs = Collections.unmodifiableList(next);
+        frozen = null;
+    }
+
+    /**
+     * Merges every run into one, dropping tombstones and shadowed values,
+     * and returns the runs it replaced so the caller can delete them once
+     * the manifest no longer lists them.
+     */
+    List<SortedRun> compact(long runNumber) throws IOException {
+        List<SortedRun> old = runs;
+        List<Cursor> sources = new ArrayList<>(old.size());
+        for (SortedRun run : old) {
+            sources.add(run.cursor());
+        }
+        SortedRun merged = SortedRun.write(runPath(runNumber), runNumber, merge(sources));
+        runs = Collections.singletonList(merged);
+        return old;
+    }
+
+    void openRuns(long[] runNumbers) throws IOException {
+        List<SortedRun> opened = new ArrayList<>(runNumbers.length);
+        for (long runNumber : runNumbers) {
+            opened.add(SortedRun.open(runPath(runNumber), runNumber));
+        }
+        runs = Collections.unmodifiableList(opened);
+    }
+
+    Path runPath(long runNumber) {
+        return dir.resolve(String.format("%s-%016x.run", name, runNumber));
+    }
+
+    interface EntryVisitor {
+        boolean visit(long key, byte[] value);
+    }
+
+    private interface Cursor {
+        boolean next();
+
+        long key();
+
+        byte[] value();
+    }
+
+    /**
+     * Merges cursors given newest first. For a key present in several, only
+     * the newest value counts, and keys whose newest value is a tombstone
+     * are skipped.
+     */
+    private static Cursor merge(List<Cursor> sources) {
+        PriorityQueue<int[]> heads = new PriorityQueue<>((a, b) -> {
+            int byKey = Long.compare(sources.get(a[0]).key(), sources.get(b[0]).key());
+            return byKey != 0 ? byKey : Integer.compare(a[0], b[0]);
+        });
+        for (int i = 0; i < sources.size(); i++) {
+            if (sources.get(i).next()) {
+                heads.add(new int[] {i});
+            }
+        }
+        return new Cursor() {
+            private long key;
+            private byte[] value;
+
+            @Override
+            public boolean next() {
+                while (!heads.isEmpty()) {
+                    int[] head = heads.poll();
+                    Cursor newest = sources.get(head[0]);
+                    key = newest.key();
+                    value = newest.value();
+                    advance(head);
+                    while (!heads.isEmpty() && sources.get(heads.peek()[0]).key() == key) {
+                        advance(heads.poll());
+                    }
+                    if (value != TOMBSTONE) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+
+            private void advance(int[] head) {
+                if (sources.get(head[0]).next()) {
+                    heads.add(head);
+                }
+            }
+
+            @Override
+            public long key() {
+                return key;
+            }
+
+            @Override
+            public byte[] value() {
+                return value;
+            }
+        };
+    }
+
+    private static final class MapCursor implements Cursor {
+        private final Iterator<Map.Entry<Long, byte[]>> entries;
+        private Map.Entry<Long, byte[]> current;
+
+        MapCursor(ConcurrentSkipListMap<Long, byte[]> map) {
+            this.entries = map.entrySet().iterator();
+        }
+
+        @Override
+        public boolean next() {
+            current = entries.hasNext() ? entries.next() : null;
+            return current != null;
+        }
+
+        @Override
+        public long key() {
+            return current.getKey();
+        }
+
+        @Override
+        public byte[] value() {
+            return current.getValue();
+        }
+    }
+
+    /** An immutable, memory-mapped run file. */
+    static final class SortedRun {
+        private final Path file;
+        private final long number;
+        private final MappedByteBuffer map;
+        private final int count;
+        private final int indexOffset;
+
+        private SortedRun(Path file, long number, MappedByteBuffer map, int count, int indexOffset) {
+            this.file = file;
+            this.number = number;
+            this.map = map;
+            this.count = count;
+            this.indexOffset = indexOffset;
+        }
+
+        Path file() {
+            return file;
+        }
+
+        long number() {
+            return number;
+        }
+
+        static SortedRun open(Path file, long number) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+                int size = map.limit();
+                if (size < 8 + FOOTER || map.getInt(0) != RUN_MAGIC || map.getInt(size - 4) != RUN_MAGIC) {
+                    throw new IOException("Not a sorted run: " + file);
+                }
+                if (map.getInt(4) != RUN_VERSION) {
+                    throw new IOException("Unsupported sorted run version " + map.getInt(4) + " in " + file);
+                }
+                CRC32 crc = new CRC32();
+                crc.update(map.duplicate().limit(size - 8));
+                if ((int) crc.getValue() != map.getInt(size - 8)) {
+                    throw new IOException("Sorted run checksum mismatch: " + file);
+                }
+                return new SortedRun(file, number, map, map.getInt(size - FOOTER), map.getInt(size - 12));
+            }
+        }
+
+        static SortedRun write(Path file, long number, Cursor entries) throws IOException {
+            Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+            long[] keys = new long[1024];
+            int[] offsets = new int[1024];
+            int count = 0;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                CheckedOutputStream checked = new CheckedOutputStream(
+                    new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+                DataOutputStream out = new DataOutputStream(checked);
+                out.writeInt(RUN_MAGIC);
+                out.writeInt(RUN_VERSION);
+                while (entries.next()) {
+                    if (count == keys.length) {
+                        keys = Arrays.copyOf(keys, count << 1);
+                        offsets = Arrays.copyOf(offsets, count << 1);
+                    }
+                    if (out.size() == Integer.MAX_VALUE) {
+                        throw new IOException("Sorted run exceeds 2 GB: " + file);
+                    }
+                    keys[count] = entries.key();
+                    offsets[count] = out.size();
+                    count++;
+                    byte[] value = entries.value();
+                    out.writeLong(entries.key());
+                    if (value == TOMBSTONE) {
+                        out.writeInt(-1);
+                    } else {
+                        out.writeInt(value.length);
+                        out.write(value);
+                    }
+                }
+                int indexOffset = out.size();
+                for (int i = 0; i < count; i++) {
+                    out.writeLong(keys[i]);
+                }
+                for (int i = 0; i < count; i++) {
+                    out.writeInt(offsets[i]);
+                }
+                out.writeInt(count);
+                out.writeInt(indexOffset);
+                out.flush();
+                out.writeInt((int) checked.getChecksum().getValue());
+                out.writeInt(RUN_MAGIC);
+                out.flush();
+                channel.force(true);
+            }
+            Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            return open(file, number);
+        }
+
+        byte[] get(long key) {
+            int low = 0;
+            int high = count - 1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                long midKey = keyAt(mid);
+                if (midKey < key) {
+                    low = mid + 1;
+                } else if (midKey > key) {
+                    high = mid - 1;
+                } else {
+                    return valueAt(offsetAt(mid));
+                }
+            }
+            return null;
+        }
+
+        Cursor cursor() {
+            return new Cursor() {
+                private int index = -1;
+
+                @Override
+                public boolean next() {
+                    return ++index < count;
+                }
+
+                @Override
+                public long key() {
+                    return keyAt(index);
+                }
+
+                @Override
+                public byte[] value() {
+                    return valueAt(offsetAt(index));
+                }
+            };
+        }
+
+        private long keyAt(int i) {
+            return map.getLong(indexOffset + (i << 3));
+        }
+
+        private int offsetAt(int i) {
+            return map.getInt(indexOffset + (count << 3) + (i << 2));
+        }
+
+        private byte[] valueAt(int offset) {
+            int length = map.getInt(offset + 8);
+            if (length < 0) {
+                return TOMBSTONE;
+            }
+            byte[] value = new byte[length];
+            map.get(offset + 12, value);
+            return value;
+        }
+    }
+}
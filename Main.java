@@ -71,9 +71,11 @@ class MainFrame extends JFrame {
     private HomePanel homePanel;
     private DashboardPanel dashboardPanel;
     private InventoryPanel inventoryPanel;
+    private final BackendService.Session session;
 
-    MainFrame() {
+    MainFrame(BackendService.Session session) {
         super("Inventory Management System");
+        this.session = session;
         setDefaultCloseOperation(EXIT_ON_CLOSE);
         setSize(1280, 720);
         setLocationRelativeTo(null);
@@ -108,7 +110,7 @@ class MainFrame extends JFrame {
         contentPanel.add(dashboardPanel, "DASH");
         contentPanel.add(inventoryPanel, "INV");
         contentPanel.add(ordersPanel, "ORD");
-        contentPanel.add(new ProfilePanel(), "PROF");
+        contentPanel.add(new ProfilePanel(session), "PROF");
     }
     
     public void refreshHomeAndDashboard() {
@@ -156,6 +158,7 @@ class MainFrame extends JFrame {
 
         JButton logout = createNavButton("Log Out", null, "logo/log-in.png");
         logout.addActionListener(e -> {
+            BackendService.getInstance().logout(session);
             dispose();
             Login login = new Login();
             login.setVisible(true);
@@ -207,13 +210,11 @@ class MainFrame extends JFrame {
 
 /*==================== Home ====================*/
 class HomePanel extends JPanel {
-    private BackendService backend;
     private JPanel body;
     private JPanel row1;
     private JPanel row2;
     
     HomePanel() {
-        backend = BackendService.getInstance();
         setOpaque(false);
         setLayout(new BorderLayout());
 
@@ -253,12 +254,16 @@ class HomePanel extends JPanel {
     }
     
     public void refresh() {
+        AsyncBackend.getInstance().latest(this, Counts::new).thenAccept(this::show);
+    }
+
+    private void show(Counts counts) {
         row1.removeAll();
-        row1.add(stat(String.valueOf(backend.getTotalProducts()), "Product", "logo/box.png"));
-        row1.add(stat(String.valueOf(backend.getTotalOrders()), "Orders", "logo/grocery-store (1).png"));
+        row1.add(stat(String.valueOf(counts.totalProducts), "Product", "logo/box.png"));
+        row1.add(stat(String.valueOf(counts.totalOrders), "Orders", "logo/grocery-store (1).png"));
         
         row2.removeAll();
-        row2.add(stat(String.valueOf(backend.getLowStockCount()), "Low Stock", "logo/alert.png"));
+        row2.add(stat(String.valueOf(counts.lowStockCount), "Low Stock", "logo/alert.png"));
         
         row1.revalidate();
         row1.repaint();
@@ -266,6 +271,19 @@ class HomePanel extends JPanel {
         row2.repaint();
     }
 
+    /* The counters the home page shows, read off the EDT. */
+    private static class Counts {
+        final int totalProducts;
+        final int totalOrders;
+        final int lowStockCount;
+
+        Counts(BackendService backend) {
+            totalProducts = backend.getTotalProducts();
+            totalOrders = backend.getTotalOrders();
+            lowStockCount = backend.getLowStockCount();
+        }
+    }
+
     private JPanel stat(String value, String label, String iconPath) {
         RoundedPanel card = new RoundedPanel(18);
         card.setBackground(new Color(240,240,240));
@@ -294,20 +312,25 @@ class HomePanel extends JPanel {
 /*==================== Dashboard ====================*/
 
 class DashboardPanel extends JPanel {
-    private BackendService backend;
     private JPanel body;
     private JPanel stats;
     private JPanel bottom;
+    private JLabel inventoryValue;
     
     DashboardPanel() {
-        backend = BackendService.getInstance();
         setOpaque(false);
         setLayout(new BorderLayout(0, 15));
 
+        JPanel header = new JPanel(new BorderLayout());
+        header.setOpaque(false);
+        header.setBorder(new EmptyBorder(0, 0, 10, 0));
         JLabel heading = new JLabel("Dashboard");
         heading.setFont(new Font("Segoe UI", Font.BOLD, 26));
-        heading.setBorder(new EmptyBorder(0, 0, 10, 0));
-        add(heading, BorderLayout.NORTH);
+        header.add(heading, BorderLayout.WEST);
+        inventoryValue = new JLabel();
+        inventoryValue.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        header.add(inventoryValue, BorderLayout.EAST);
+        add(header, BorderLayout.NORTH);
 
         body = new JPanel();
         body.setOpaque(false);
@@ -329,15 +352,20 @@ class DashboardPanel extends JPanel {
     }
     
     public void refresh() {
+        AsyncBackend.getInstance().latest(this, Snapshot::new).thenAccept(this::show);
+    }
+
+    private void show(Snapshot snapshot) {
+        inventoryValue.setText("Inventory value: ₱" + String.format("%,.2f", snapshot.inventoryValue));
         stats.removeAll();
-        stats.add(statCard(String.valueOf(backend.getTotalProducts()), "Total Products", new Color(51, 102, 255), "logo/box.png"));
-        stats.add(statCard(String.valueOf(backend.getTotalInStock()), "In Stocks", new Color(0, 170, 0), "logo/check-mark.png"));
-        stats.add(statCard(String.valueOf(backend.getTotalOrders()), "Total Orders", new Color(255, 193, 7), "logo/grocery-store (1).png"));
-        stats.add(statCard(String.valueOf(backend.getLowStockCount()), "Low Stocks", new Color(220, 53, 69), "logo/alert.png"));
+        stats.add(statCard(String.valueOf(snapshot.totalProducts), "Total Products", new Color(51, 102, 255), "logo/box.png"));
+        stats.add(statCard(String.valueOf(snapshot.totalInStock), "In Stocks", new Color(0, 170, 0), "logo/check-mark.png"));
+        stats.add(statCard(String.valueOf(snapshot.totalOrders), "Total Orders", new Color(255, 193, 7), "logo/grocery-store (1).png"));
+        stats.add(statCard(String.valueOf(snapshot.lowStockCount), "Low Stocks", new Color(220, 53, 69), "logo/alert.png"));
         
         bottom.removeAll();
-        bottom.add(recentOrdersCard());
-        bottom.add(lowStocksCard());
+        bottom.add(recentOrdersCard(snapshot.recentOrders));
+        bottom.add(lowStocksCard(snapshot.lowStockProducts));
         
         stats.revalidate();
         stats.repaint();
@@ -345,6 +373,27 @@ class DashboardPanel extends JPanel {
         bottom.repaint();
     }
 
+    /* Everything the dashboard shows, read off the EDT in one go. */
+    private static class Snapshot {
+        final int totalProducts;
+        final int totalInStock;
+        final int totalOrders;
+        final int lowStockCount;
+        final double inventoryValue;
+        final java.util.List<BackendService.Order> recentOrders;
+        final java.util.List<BackendService.Product> lowStockProducts;
+
+        Snapshot(BackendService backend) {
+            totalProducts = backend.getTotalProducts();
+            totalInStock = backend.getTotalInStock();
+            totalOrders = backend.getTotalOrders();
+            lowStockCount = backend.getLowStockCount();
+            inventoryValue = backend.getInventoryValue();
+            recentOrders = backend.getRecentOrders(5);
+            lowStockProducts = backend.getLowStockProducts();
+        }
+    }
+
     /* === helper components === */
     private RoundedPanel statCard(String value, String label, Color color, String iconPath) {
         RoundedPanel card = new RoundedPanel(18);
@@ -385,7 +434,7 @@ class DashboardPanel extends JPanel {
         return card;
     }
 
-    private RoundedPanel recentOrdersCard() {
+    private RoundedPanel recentOrdersCard(java.util.List<BackendService.Order> recentOrders) {
         RoundedPanel card = new RoundedPanel(24);
         card.setBackground(Color.WHITE);
         card.setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -397,7 +446,6 @@ class DashboardPanel extends JPanel {
 
         String[] cols = {"Order ID", "Customer", "Status"};
         DefaultTableModel model = new DefaultTableModel(cols, 0);
-        java.util.List<BackendService.Order> recentOrders = backend.getRecentOrders(5);
         for (BackendService.Order order : recentOrders) {
             model.addRow(new Object[]{
                 "#" + String.format("%02d", order.getId()),
@@ -414,7 +462,7 @@ class DashboardPanel extends JPanel {
         return card;
     }
 
-    private RoundedPanel lowStocksCard() {
+    private RoundedPanel lowStocksCard(java.util.List<BackendService.Product> lowStockProducts) {
         RoundedPanel card = new RoundedPanel(24);
         card.setBackground(Color.WHITE);
         card.setBorder(new EmptyBorder(10, 10, 10, 10));
@@ -425,7 +473,6 @@ class DashboardPanel extends JPanel {
         card.add(title, BorderLayout.NORTH);
 
         DefaultListModel<String> m = new DefaultListModel<>();
-        java.util.List<BackendService.Product> lowStockProducts = backend.getLowStockProducts();
         for (BackendService.Product product : lowStockProducts) {
             m.addElement(product.getName() + " - Only " + product.getQuantity() + " units left");
         }
@@ -442,14 +489,14 @@ class DashboardPanel extends JPanel {
 /*==================== Inventory ====================*/
 
 class InventoryPanel extends JPanel {
-    private BackendService backend;
-    private JPanel productsPanel;
+    private JScrollPane scrollPane;
+    private ProductGrid productGrid;
+    private JPanel emptyPanel;
     private JTextField searchField;
     private MainFrame mainFrame;
     
     InventoryPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
-        backend = BackendService.getInstance();
         setOpaque(false);
         setLayout(new BorderLayout(0, 10));
 
@@ -463,8 +510,12 @@ class InventoryPanel extends JPanel {
         JButton addBtn = new JButton("+ Add Product");
         stylePrimary(addBtn);
         addBtn.addActionListener(e -> showAddProductDialog());
-        JPanel right = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+        JButton importBtn = new JButton("Import CSV");
+        stylePrimary(importBtn);
+        importBtn.addActionListener(e -> importProducts(importBtn));
+        JPanel right = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
         right.setOpaque(false);
+        right.add(importBtn);
         right.add(addBtn);
         header.add(right, BorderLayout.EAST);
 
@@ -489,96 +540,230 @@ class InventoryPanel extends JPanel {
         top.setBorder(new EmptyBorder(0, 0, 10, 0));
         add(top, BorderLayout.NORTH);
 
-        productsPanel = new JPanel();
-        productsPanel.setOpaque(false);
-        productsPanel.setLayout(new BoxLayout(productsPanel, BoxLayout.Y_AXIS));
-        
-        JScrollPane scrollPane = new JScrollPane(productsPanel);
+        emptyPanel = new JPanel();
+        emptyPanel.setOpaque(false);
+        emptyPanel.setLayout(new BoxLayout(emptyPanel, BoxLayout.Y_AXIS));
+        JLabel empty = new JLabel("No products found");
+        empty.setFont(new Font("Segoe UI", Font.PLAIN, 14));
+        empty.setForeground(new Color(150, 150, 150));
+        empty.setAlignmentX(CENTER_ALIGNMENT);
+        emptyPanel.add(Box.createVerticalGlue());
+        emptyPanel.add(empty);
+        emptyPanel.add(Box.createVerticalGlue());
+
+        productGrid = new ProductGrid();
+        scrollPane = new JScrollPane(productGrid);
         scrollPane.setOpaque(false);
         scrollPane.getViewport().setOpaque(false);
         scrollPane.setBorder(BorderFactory.createEmptyBorder());
         scrollPane.setVerticalScrollBarPolicy(JScrollPane.VERTICAL_SCROLLBAR_AS_NEEDED);
         scrollPane.setHorizontalScrollBarPolicy(JScrollPane.HORIZONTAL_SCROLLBAR_NEVER);
+        scrollPane.getViewport().addChangeListener(e -> productGrid.layoutCards());
         
         refreshProducts();
         add(scrollPane, BorderLayout.CENTER);
     }
 
     private void refreshProducts() {
-        productsPanel.removeAll();
-        String query = searchField.getText().trim();
-        if (query.equals("Search Products...")) query = "";
+        String text = searchField.getText().trim();
+        String query = text.equals("Search Products...") ? "" : text;
         
-        java.util.List<BackendService.Product> products;
-        if (query.isEmpty()) {
-            products = backend.getAllProducts();
-        } else {
-            products = backend.searchProducts(query);
+        AsyncBackend.getInstance()
+            .latest(this, b -> query.isEmpty() ? b.getAllProducts() : b.searchProducts(query))
+            .thenAccept(this::showProducts);
+    }
+
+    private void showProducts(java.util.List<BackendService.Product> products) {
+        productGrid.setProducts(products);
+        Component view = products.isEmpty() ? emptyPanel : productGrid;
+        if (scrollPane.getViewport().getView() != view) {
+            scrollPane.setViewportView(view);
         }
-        
-        if (products.isEmpty()) {
-            JLabel empty = new JLabel("No products found");
-            empty.setFont(new Font("Segoe UI", Font.PLAIN, 14));
-            empty.setForeground(new Color(150, 150, 150));
-            empty.setAlignmentX(CENTER_ALIGNMENT);
-            productsPanel.add(Box.createVerticalGlue());
-            productsPanel.add(empty);
-            productsPanel.add(Box.createVerticalGlue());
-        } else {
-            JPanel grid = new JPanel(new GridLayout(0, 2, 15, 15));
-            grid.setOpaque(false);
-            for (BackendService.Product product : products) {
-                grid.add(createProductCard(product));
+    }
+
+    /**
+     * Two-column grid of product cards that only holds cards for the rows in
+     * the viewport plus {@link #OVERSCAN_ROWS} on either side. Every row has
+     * the same height, so the visible rows follow from the scroll position
+     * alone. Cards that scroll out are rebound to the products scrolling in
+     * rather than rebuilt, and a new result list just rebinds the cards on
+     * screen.
+     */
+    private class ProductGrid extends JPanel implements Scrollable {
+        private static final int COLUMNS = 2;
+        private static final int GAP = 15;
+        private static final int OVERSCAN_ROWS = 2;
+
+        private java.util.List<BackendService.Product> products = java.util.Collections.emptyList();
+        private final java.util.Map<Integer, ProductCard> bound = new java.util.HashMap<>();
+        private final java.util.ArrayDeque<ProductCard> spare = new java.util.ArrayDeque<>();
+        private Dimension cardSize;
+
+        ProductGrid() {
+            super(null);
+            setOpaque(false);
+        }
+
+        void setProducts(java.util.List<BackendService.Product> products) {
+            this.products = products;
+            for (ProductCard card : bound.values()) {
+                spare.push(card);
+            }
+            bound.clear();
+            if (cardSize == null && !products.isEmpty()) {
+                ProductCard prototype = new ProductCard();
+                prototype.bind(products.get(0));
+                cardSize = prototype.getPreferredSize();
+                spare.push(prototype);
+                add(prototype);
+            }
+            revalidate();
+            layoutCards();
+            repaint();
+        }
+
+        @Override
+        public void doLayout() {
+            layoutCards();
+        }
+
+        /** Binds and places the cards for the rows around the viewport; called on every scroll. */
+        void layoutCards() {
+            if (cardSize == null) {
+                return;
             }
-            productsPanel.add(grid);
+            int step = cardSize.height + GAP;
+            int rows = (products.size() + COLUMNS - 1) / COLUMNS;
+            Rectangle visible = getVisibleRect();
+            int first = Math.max(0, visible.y / step - OVERSCAN_ROWS) * COLUMNS;
+            int last = Math.min(rows, (visible.y + visible.height) / step + 1 + OVERSCAN_ROWS) * COLUMNS;
+            last = Math.min(last, products.size());
+
+            java.util.Iterator<java.util.Map.Entry<Integer, ProductCard>> it = bound.entrySet().iterator();
+            while (it.hasNext()) {
+                java.util.Map.Entry<Integer, ProductCard> entry = it.next();
+                if (entry.getKey() < first || entry.getKey() >= last) {
+                    entry.getValue().setVisible(false);
+                    spare.push(entry.getValue());
+                    it.remove();
+                }
+            }
+
+            int cardWidth = (getWidth() - GAP * (COLUMNS - 1)) / COLUMNS;
+            for (int index = first; index < last; index++) {
+                ProductCard card = bound.get(index);
+                if (card == null) {
+                    card = spare.isEmpty() ? newCard() : spare.pop();
+                    card.bind(products.get(index));
+                    card.setVisible(true);
+                    bound.put(index, card);
+                }
+                card.setBounds((index % COLUMNS) * (cardWidth + GAP), (index / COLUMNS) * step,
+                    cardWidth, cardSize.height);
+                card.validate();
+            }
+            for (ProductCard card : spare) {
+                card.setVisible(false);
+            }
+        }
+
+        private ProductCard newCard() {
+            ProductCard card = new ProductCard();
+            add(card);
+            return card;
+        }
+
+        @Override
+        public Dimension getPreferredSize() {
+            if (cardSize == null) {
+                return new Dimension(0, 0);
+            }
+            int rows = (products.size() + COLUMNS - 1) / COLUMNS;
+            return new Dimension(cardSize.width * COLUMNS + GAP * (COLUMNS - 1),
+                Math.max(0, rows * (cardSize.height + GAP) - GAP));
+        }
+
+        @Override
+        public Dimension getPreferredScrollableViewportSize() {
+            return getPreferredSize();
+        }
+
+        @Override
+        public int getScrollableUnitIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return cardSize == null ? 16 : (cardSize.height + GAP) / 4;
+        }
+
+        @Override
+        public int getScrollableBlockIncrement(Rectangle visibleRect, int orientation, int direction) {
+            return orientation == SwingConstants.VERTICAL ? visibleRect.height : visibleRect.width;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportWidth() {
+            return true;
+        }
+
+        @Override
+        public boolean getScrollableTracksViewportHeight() {
+            return false;
         }
-        productsPanel.revalidate();
-        productsPanel.repaint();
     }
 
-    private RoundedPanel createProductCard(BackendService.Product product) {
-        RoundedPanel c = new RoundedPanel(24);
-        c.setBackground(Color.WHITE);
-        c.setBorder(new EmptyBorder(18, 18, 18, 18));
-        c.setLayout(new BorderLayout());
-
-        JPanel statusP = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
-        statusP.setOpaque(false);
-        boolean inStock = !product.isLowStock();
-        JLabel status = new JLabel(inStock ? "In Stock" : "Low Stock");
-        status.setOpaque(true);
-        status.setBackground(inStock ? new Color(0, 180, 80) : new Color(230, 70, 70));
-        status.setForeground(Color.WHITE);
-        status.setBorder(BorderFactory.createEmptyBorder(3, 10, 3, 10));
-        statusP.add(status);
-
-        JPanel info = new JPanel();
-        info.setOpaque(false);
-        info.setLayout(new BoxLayout(info, BoxLayout.Y_AXIS));
-        JLabel nameL = new JLabel(product.getName());
-        nameL.setFont(new Font("Segoe UI", Font.BOLD, 14));
-        JLabel priceL = new JLabel("Price: ₱" + String.format("%,.2f", product.getPrice()));
-        priceL.setFont(new Font("Segoe UI", Font.PLAIN, 13));
-        JLabel stockL = new JLabel("Stock: " + product.getQuantity());
-        stockL.setFont(new Font("Segoe UI", Font.PLAIN, 13));
-        info.add(nameL);
-        info.add(Box.createVerticalStrut(5));
-        info.add(priceL);
-        info.add(stockL);
-
-        JPanel actions = new JPanel(new FlowLayout(FlowLayout.CENTER, 8, 0));
-        actions.setOpaque(false);
-        JButton editBtn = flatIconButton(new PencilIcon(16, 16));
-        editBtn.addActionListener(e -> showEditProductDialog(product));
-        JButton delBtn = flatIconButton(new TrashIcon(16, 16));
-        delBtn.addActionListener(e -> deleteProduct(product));
-        actions.add(editBtn);
-        actions.add(delBtn);
-
-        c.add(statusP, BorderLayout.NORTH);
-        c.add(info, BorderLayout.CENTER);
-        c.add(actions, BorderLayout.SOUTH);
-        return c;
+    /** A product card whose labels are rebound as the grid recycles it. */
+    private class ProductCard extends RoundedPanel {
+        private final JLabel status = new JLabel();
+        private final JLabel nameL = new JLabel();
+        private final JLabel priceL = new JLabel();
+        private final JLabel stockL = new JLabel();
+        private BackendService.Product product;
+
+        ProductCard() {
+            super(24);
+            setBackground(Color.WHITE);
+            setBorder(new EmptyBorder(18, 18, 18, 18));
+            setLayout(new BorderLayout());
+
+            JPanel statusP = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
+            statusP.setOpaque(false);
+            status.setOpaque(true);
+            status.setForeground(Color.WHITE);
+            status.setBorder(BorderFactory.createEmptyBorder(3, 10, 3, 10));
+            statusP.add(status);
+
+            JPanel info = new JPanel();
+            info.setOpaque(false);
+            info.setLayout(new BoxLayout(info, BoxLayout.Y_AXIS));
+            nameL.setFont(new Font("Segoe UI", Font.BOLD, 14));
+            priceL.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+            stockL.setFont(new Font("Segoe UI", Font.PLAIN, 13));
+            info.add(nameL);
+            info.add(Box.createVerticalStrut(5));
+            info.add(priceL);
+            info.add(stockL);
+
+            JPanel actions = new JPanel(new FlowLayout(FlowLayout.CENTER, 8, 0));
+            actions.setOpaque(false);
+            JButton editBtn = flatIconButton(new PencilIcon(16, 16));
+            editBtn.addActionListener(e -> showEditProductDialog(product));
+            JButton delBtn = flatIconButton(new TrashIcon(16, 16));
+            delBtn.addActionListener(e -> deleteProduct(product));
+            actions.add(editBtn);
+            actions.add(delBtn);
+
+            add(statusP, BorderLayout.NORTH);
+            add(info, BorderLayout.CENTER);
+            add(actions, BorderLayout.SOUTH);
+        }
+
+        void bind(BackendService.Product product) {
+            this.product = product;
+            boolean inStock = !product.isLowStock();
+            status.setText(inStock ? "In Stock" : "Low Stock");
+            status.setBackground(inStock ? new Color(0, 180, 80) : new Color(230, 70, 70));
+            nameL.setText(product.getName());
+            priceL.setText("Price: ₱" + String.format("%,.2f", product.getPrice()));
+            stockL.setText("Stock: " + product.getQuantity());
+        }
     }
 
     private void showAddProductDialog() {
@@ -635,13 +820,19 @@ class InventoryPanel extends JPanel {
                     return;
                 }
                 
-                if (backend.addProduct(name, price, quantity)) {
-                    refreshProducts();
-                    if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
-                    dialog.dispose();
-                } else {
-                    JOptionPane.showMessageDialog(dialog, "Failed to add product. Product name may already exist.", "Error", JOptionPane.ERROR_MESSAGE);
-                }
+                addBtn.setEnabled(false);
+                AsyncBackend.getInstance().call(b -> b.addProduct(name, price, quantity)).whenComplete((added, error) -> {
+                    addBtn.setEnabled(true);
+                    if (error != null) {
+                        JOptionPane.showMessageDialog(dialog, "Error adding product: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                    } else if (added) {
+                        refreshProducts();
+                        if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
+                        dialog.dispose();
+                    } else {
+                        JOptionPane.showMessageDialog(dialog, "Failed to add product. Product name may already exist.", "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
             } catch (NumberFormatException ex) {
                 JOptionPane.showMessageDialog(dialog, "Please enter valid numbers for quantity and price.", "Error", JOptionPane.ERROR_MESSAGE);
             }
@@ -655,9 +846,49 @@ class InventoryPanel extends JPanel {
         dialog.setVisible(true);
     }
 
+    private void importProducts(JButton importBtn) {
+        JFileChooser chooser = new JFileChooser();
+        chooser.setDialogTitle("Import products (name, price, quantity)");
+        chooser.setFileFilter(new javax.swing.filechooser.FileNameExtensionFilter("CSV files", "csv"));
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        java.io.File file = chooser.getSelectedFile();
+
+        importBtn.setEnabled(false);
+        AsyncBackend.getInstance().call(b -> {
+            try (java.io.Reader in = java.nio.file.Files.newBufferedReader(file.toPath())) {
+                return new ProductCsvImporter(b).importFrom(in);
+            } catch (java.io.IOException ex) {
+                throw new java.io.UncheckedIOException(ex);
+            }
+        }).whenComplete((report, error) -> {
+            importBtn.setEnabled(true);
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Import failed: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            StringBuilder message = new StringBuilder()
+                .append("Added: ").append(report.getCreated())
+                .append("\nUpdated: ").append(report.getUpdated())
+                .append("\nSkipped: ").append(report.getErrorCount());
+            int shown = Math.min(10, report.getErrors().size());
+            for (int i = 0; i < shown; i++) {
+                message.append(i == 0 ? "\n\n" : "\n").append(report.getErrors().get(i));
+            }
+            if (report.getErrorCount() > shown) {
+                message.append("\n...");
+            }
+            JOptionPane.showMessageDialog(this, message.toString(), "Import complete",
+                report.getErrorCount() == 0 ? JOptionPane.INFORMATION_MESSAGE : JOptionPane.WARNING_MESSAGE);
+            refreshProducts();
+            if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
+        });
+    }
+
     private void showEditProductDialog(BackendService.Product product) {
         JDialog dialog = new JDialog((JFrame) SwingUtilities.getWindowAncestor(this), "Edit Product", true);
-        dialog.setSize(450, 300);
+        dialog.setSize(450, 360);
         dialog.setLocationRelativeTo(this);
         dialog.setLayout(new BorderLayout(20, 20));
         dialog.getContentPane().setBackground(Color.WHITE);
@@ -679,6 +910,9 @@ class InventoryPanel extends JPanel {
         JTextField quantityField = new JTextField(String.valueOf(product.getQuantity()));
         content.add(createFormField("Quantity:", quantityField));
 
+        JTextField thresholdField = new JTextField(String.valueOf(product.getReorderThreshold()));
+        content.add(createFormField("Reorder Level:", thresholdField));
+
         JPanel pricePanel = new JPanel(new BorderLayout(5, 0));
         pricePanel.setBackground(Color.WHITE);
         pricePanel.setBorder(new EmptyBorder(0, 0, 10, 0));
@@ -703,21 +937,33 @@ class InventoryPanel extends JPanel {
                 String name = nameField.getText().trim();
                 int quantity = Integer.parseInt(quantityField.getText().trim());
                 double price = Double.parseDouble(priceField.getText().trim());
+                int threshold = Integer.parseInt(thresholdField.getText().trim());
                 
                 if (name.isEmpty()) {
                     JOptionPane.showMessageDialog(dialog, "Product name cannot be empty.", "Error", JOptionPane.ERROR_MESSAGE);
                     return;
                 }
-                
-                if (backend.updateProduct(product.getId(), name, price, quantity)) {
-                    refreshProducts();
-                    if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
-                    dialog.dispose();
-                } else {
-                    JOptionPane.showMessageDialog(dialog, "Failed to update product.", "Error", JOptionPane.ERROR_MESSAGE);
+                if (threshold < 0) {
+                    JOptionPane.showMessageDialog(dialog, "Reorder level cannot be negative.", "Error", JOptionPane.ERROR_MESSAGE);
+                    return;
                 }
+                
+                saveBtn.setEnabled(false);
+                AsyncBackend.getInstance().call(b -> b.updateProduct(product.getId(), name, price, quantity, threshold))
+                    .whenComplete((updated, error) -> {
+                        saveBtn.setEnabled(true);
+                        if (error != null) {
+                            JOptionPane.showMessageDialog(dialog, "Error updating product: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                        } else if (updated) {
+                            refreshProducts();
+                            if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
+                            dialog.dispose();
+                        } else {
+                            JOptionPane.showMessageDialog(dialog, "Failed to update product.", "Error", JOptionPane.ERROR_MESSAGE);
+                        }
+                    });
             } catch (NumberFormatException ex) {
-                JOptionPane.showMessageDialog(dialog, "Please enter valid numbers for quantity and price.", "Error", JOptionPane.ERROR_MESSAGE);
+                JOptionPane.showMessageDialog(dialog, "Please enter valid numbers for quantity, price and reorder level.", "Error", JOptionPane.ERROR_MESSAGE);
             }
         });
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT));
@@ -735,14 +981,20 @@ class InventoryPanel extends JPanel {
             "Confirm Delete", 
             JOptionPane.YES_NO_OPTION);
         if (confirm == JOptionPane.YES_OPTION) {
-            if (backend.deleteProduct(product.getId())) {
-                refreshProducts();
-                if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
-            } else {
-                JOptionPane.showMessageDialog(this, 
-                    "Cannot delete product. It may be used in existing orders.", 
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+            AsyncBackend.getInstance().call(b -> b.deleteProduct(product.getId())).whenComplete((deleted, error) -> {
+                if (error != null) {
+                    JOptionPane.showMessageDialog(this, 
+                        "Error deleting product: " + error.getMessage(), 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                } else if (deleted) {
+                    refreshProducts();
+                    if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
+                } else {
+                    JOptionPane.showMessageDialog(this, 
+                        "Cannot delete product. It may be used in existing orders.", 
+                        "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
         }
     }
 
@@ -807,7 +1059,6 @@ class InventoryPanel extends JPanel {
 /*==================== Orders ====================*/
 
 class OrdersPanel extends JPanel {
-    private BackendService backend;
     private DefaultTableModel tableModel;
     private JTable table;
     private JTextField searchField;
@@ -815,7 +1066,6 @@ class OrdersPanel extends JPanel {
     
     OrdersPanel(MainFrame mainFrame) {
         this.mainFrame = mainFrame;
-        backend = BackendService.getInstance();
         setOpaque(false);
         setLayout(new BorderLayout(0, 10));
 
@@ -828,7 +1078,7 @@ class OrdersPanel extends JPanel {
 
         JButton newBtn = new JButton("+ New Order");
         stylePrimary(newBtn);
-        newBtn.addActionListener(e -> showNewOrderDialog());
+        newBtn.addActionListener(e -> showNewOrderDialog(newBtn));
         JPanel right = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
         right.setOpaque(false);
         right.add(newBtn);
@@ -883,17 +1133,16 @@ class OrdersPanel extends JPanel {
     }
 
     private void refreshOrders() {
-        tableModel.setRowCount(0);
-        String query = searchField.getText().trim();
-        if (query.equals("Search Products...")) query = "";
-        
-        java.util.List<BackendService.Order> orders;
-        if (query.isEmpty()) {
-            orders = backend.getAllOrders();
-        } else {
-            orders = backend.searchOrders(query);
-        }
+        String text = searchField.getText().trim();
+        String query = text.equals("Search Products...") ? "" : text;
         
+        AsyncBackend.getInstance()
+            .latest(this, b -> query.isEmpty() ? b.getAllOrders() : b.searchOrders(query))
+            .thenAccept(this::showOrders);
+    }
+
+    private void showOrders(java.util.List<BackendService.Order> orders) {
+        tableModel.setRowCount(0);
         java.text.SimpleDateFormat sdf = new java.text.SimpleDateFormat("yyyy-MM-dd");
         for (BackendService.Order order : orders) {
             Object[] row = {
@@ -909,7 +1158,19 @@ class OrdersPanel extends JPanel {
         }
     }
 
-    private void showNewOrderDialog() {
+    private void showNewOrderDialog(JButton newBtn) {
+        newBtn.setEnabled(false);
+        AsyncBackend.getInstance().call(BackendService::getAllProducts).whenComplete((products, error) -> {
+            newBtn.setEnabled(true);
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error loading products: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                showNewOrderDialog(products);
+            }
+        });
+    }
+
+    private void showNewOrderDialog(java.util.List<BackendService.Product> products) {
         JDialog dialog = new JDialog((JFrame) SwingUtilities.getWindowAncestor(this), "Make new order", true);
         dialog.setSize(600, 400);
         dialog.setLocationRelativeTo(this);
@@ -938,7 +1199,7 @@ class OrdersPanel extends JPanel {
         orderTable.getTableHeader().setFont(new Font("Segoe UI", Font.BOLD, 12));
         orderTable.setRowHeight(25);
         
-        orderTable.getColumn("Item Name").setCellEditor(new ProductComboBoxEditor());
+        orderTable.getColumn("Item Name").setCellEditor(new ProductComboBoxEditor(products));
         orderTable.getColumn("Item Name").setCellRenderer(new DefaultTableCellRenderer() {
             @Override
             public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected, boolean hasFocus, int row, int column) {
@@ -1071,9 +1332,12 @@ class OrdersPanel extends JPanel {
                 return;
             }
             
-            try {
-                BackendService.Order order = backend.createOrder(customerName, items);
-                if (order != null) {
+            addOrderBtn.setEnabled(false);
+            AsyncBackend.getInstance().call(b -> b.createOrder(customerName, items)).whenComplete((order, error) -> {
+                addOrderBtn.setEnabled(true);
+                if (error != null) {
+                    JOptionPane.showMessageDialog(dialog, "Error creating order: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                } else if (order != null) {
                     JOptionPane.showMessageDialog(dialog, "Order created successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
                     dialog.dispose();
                     refreshOrders(); 
@@ -1083,10 +1347,7 @@ class OrdersPanel extends JPanel {
                 } else {
                     JOptionPane.showMessageDialog(dialog, "Failed to create order. Please check stock availability.", "Error", JOptionPane.ERROR_MESSAGE);
                 }
-            } catch (Exception ex) {
-                JOptionPane.showMessageDialog(dialog, "Error creating order: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
-                ex.printStackTrace();
-            }
+            });
         });
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 10, 0));
@@ -1102,7 +1363,7 @@ class OrdersPanel extends JPanel {
         dialog.setVisible(true);
     }
 
-    private JComboBox<BackendService.Product> createProductComboBox() {
+    private JComboBox<BackendService.Product> createProductComboBox(java.util.List<BackendService.Product> products) {
         JComboBox<BackendService.Product> combo = new JComboBox<>();
         combo.setRenderer(new DefaultListCellRenderer() {
             @Override
@@ -1115,23 +1376,25 @@ class OrdersPanel extends JPanel {
                 return this;
             }
         });
-        for (BackendService.Product product : backend.getAllProducts()) {
+        for (BackendService.Product product : products) {
             combo.addItem(product);
         }
         return combo;
     }
     
     class ProductComboBoxEditor extends DefaultCellEditor {
+        private final java.util.List<BackendService.Product> products;
         private JComboBox<BackendService.Product> combo;
         
-        public ProductComboBoxEditor() {
+        public ProductComboBoxEditor(java.util.List<BackendService.Product> products) {
             super(new JComboBox<BackendService.Product>());
+            this.products = products;
             setClickCountToStart(1);
         }
         
         @Override
         public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
-            combo = createProductComboBox();
+            combo = createProductComboBox(products);
             if (value instanceof BackendService.Product) {
                 combo.setSelectedItem(value);
             }
@@ -1285,7 +1548,7 @@ class OrdersPanel extends JPanel {
         private JPanel panel;
         private JButton editBtn;
         private JButton deleteBtn;
-        private int orderId;
+        private long orderId;
 
         public ActionsEditor(JCheckBox checkBox) {
             super(checkBox);
@@ -1321,7 +1584,7 @@ class OrdersPanel extends JPanel {
         }
 
         public Component getTableCellEditorComponent(JTable table, Object value, boolean isSelected, int row, int column) {
-            orderId = (Integer) value;
+            orderId = (Long) value;
             if (isSelected) {
                 panel.setBackground(table.getSelectionBackground());
             } else {
@@ -1335,13 +1598,20 @@ class OrdersPanel extends JPanel {
         }
     }
     
-    private void showEditStatusDialog(int orderId) {
-        BackendService.Order order = backend.getOrderById(orderId);
-        if (order == null) {
-            JOptionPane.showMessageDialog(this, "Order not found.", "Error", JOptionPane.ERROR_MESSAGE);
-            return;
-        }
-        
+    private void showEditStatusDialog(long orderId) {
+        AsyncBackend.getInstance().call(b -> b.getOrderById(orderId)).whenComplete((order, error) -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(this, "Error loading order: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            } else if (order == null) {
+                JOptionPane.showMessageDialog(this, "Order not found.", "Error", JOptionPane.ERROR_MESSAGE);
+            } else {
+                showEditStatusDialog(order);
+            }
+        });
+    }
+
+    private void showEditStatusDialog(BackendService.Order order) {
+        long orderId = order.getId();
         JDialog dialog = new JDialog((JFrame) SwingUtilities.getWindowAncestor(this), "Edit Order Status", true);
         dialog.setSize(400, 250);
         dialog.setLocationRelativeTo(this);
@@ -1406,12 +1676,17 @@ class OrdersPanel extends JPanel {
                     JOptionPane.YES_NO_OPTION);
                 
                 if (confirm == JOptionPane.YES_OPTION) {
-                    if (backend.updateOrderStatus(orderId, status)) {
-                        refreshOrders();
-                        if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
-                        dialog.dispose();
-                    } else {
-                        JOptionPane.showMessageDialog(dialog, "Failed to update order status.", "Error", JOptionPane.ERROR_MESSAGE);
+                    AsyncBackend.getInstance().call(b -> b.updateOrderStatus(orderId, status)).whenComplete((updated, error) -> {
+                        if (error == null && updated) {
+                            refreshOrders();
+                            if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
+                            dialog.dispose();
+                            return;
+                        }
+                        String message = error != null
+                            ? "Error updating order status: " + error.getMessage()
+                            : "Failed to update order status.";
+                        JOptionPane.showMessageDialog(dialog, message, "Error", JOptionPane.ERROR_MESSAGE);
                         radioBtn.setSelected(false);
                         for (AbstractButton btn : java.util.Collections.list(statusGroup.getElements())) {
                             if (btn.getText().equals(currentStatus.getDisplayName())) {
@@ -1419,7 +1694,7 @@ class OrdersPanel extends JPanel {
                                 break;
                             }
                         }
-                    }
+                    });
                 } else {
                     // Revert selection if user cancels
                     radioBtn.setSelected(false);
@@ -1453,20 +1728,26 @@ class OrdersPanel extends JPanel {
         dialog.setVisible(true);
     }
     
-    private void deleteOrder(int orderId) {
+    private void deleteOrder(long orderId) {
         int confirm = JOptionPane.showConfirmDialog(this,
             "Are you sure you want to delete this order?",
             "Confirm Delete",
             JOptionPane.YES_NO_OPTION);
             if (confirm == JOptionPane.YES_OPTION) {
-                if (backend.deleteOrder(orderId)) {
-                    refreshOrders();
-                    if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
-                } else {
-                JOptionPane.showMessageDialog(this,
-                    "Failed to delete order.",
-                    "Error", JOptionPane.ERROR_MESSAGE);
-            }
+                AsyncBackend.getInstance().call(b -> b.deleteOrder(orderId)).whenComplete((deleted, error) -> {
+                    if (error != null) {
+                        JOptionPane.showMessageDialog(this,
+                            "Error deleting order: " + error.getMessage(),
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    } else if (deleted) {
+                        refreshOrders();
+                        if (mainFrame != null) mainFrame.refreshHomeAndDashboard();
+                    } else {
+                        JOptionPane.showMessageDialog(this,
+                            "Failed to delete order.",
+                            "Error", JOptionPane.ERROR_MESSAGE);
+                    }
+                });
         }
     }
 }
@@ -1480,8 +1761,10 @@ class ProfilePanel extends JPanel {
     private JTextField emailField;
     private JTextField passwordField;
     private RoundedPanel card;
+    private final BackendService.Session session;
     
-    ProfilePanel() {
+    ProfilePanel(BackendService.Session session) {
+        this.session = session;
         backend = BackendService.getInstance();
         setOpaque(false);
         setLayout(new BorderLayout(0, 10));
@@ -1530,7 +1813,7 @@ class ProfilePanel extends JPanel {
     }
     
     private void refreshProfile() {
-        BackendService.User user = backend.getCurrentUser();
+        BackendService.User user = backend.getCurrentUser(session);
         if (user != null) {
             usernameField.setText(user.getUsername());
             phoneField.setText(user.getPhone() != null ? user.getPhone() : "");
@@ -1559,7 +1842,7 @@ class ProfilePanel extends JPanel {
     }
     
     private void showEditDialog() {
-        BackendService.User user = backend.getCurrentUser();
+        BackendService.User user = backend.getCurrentUser(session);
         if (user == null) {
             JOptionPane.showMessageDialog(this, "No user logged in.", "Error", JOptionPane.ERROR_MESSAGE);
             return;
@@ -1645,15 +1928,21 @@ class ProfilePanel extends JPanel {
                 }
             }
             
-            if (backend.updateUserProfile(username, phone, email, 
+            saveBtn.setEnabled(false);
+            AsyncBackend.getInstance().call(b -> b.updateUserProfile(session, username, phone, email, 
                     oldPassword.isEmpty() ? null : oldPassword, 
-                    newPassword.isEmpty() ? null : newPassword)) {
-                refreshProfile();
-                dialog.dispose();
-                JOptionPane.showMessageDialog(this, "Profile updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
-            } else {
-                JOptionPane.showMessageDialog(dialog, "Failed to update profile. Please check your inputs.", "Error", JOptionPane.ERROR_MESSAGE);
-            }
+                    newPassword.isEmpty() ? null : newPassword)).whenComplete((updated, error) -> {
+                saveBtn.setEnabled(true);
+                if (error != null) {
+                    JOptionPane.showMessageDialog(dialog, "Error updating profile: " + error.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                } else if (updated) {
+                    refreshProfile();
+                    dialog.dispose();
+                    JOptionPane.showMessageDialog(this, "Profile updated successfully!", "Success", JOptionPane.INFORMATION_MESSAGE);
+                } else {
+                    JOptionPane.showMessageDialog(dialog, "Failed to update profile. Please check your inputs.", "Error", JOptionPane.ERROR_MESSAGE);
+                }
+            });
         });
         
         JPanel buttonPanel = new JPanel(new FlowLayout(FlowLayout.RIGHT, 0, 0));
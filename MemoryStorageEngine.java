@@ -0,0 +1,291 @@
+package SadSystem;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+
+/**
+ * Keeps every record on the heap and makes it durable with a write-ahead
+ * log plus periodic snapshots. Startup maps the latest snapshot and
+ * replays only the log after it; a background checkpointer writes a new
+ * snapshot once enough log has accumulated ({@code ims.checkpoint.*}) and
+ * drops the segments behind it.
+ *
+ * Each write appends to the log and applies to the maps under one lock, so
+ * the log position always matches the in-memory state and a checkpoint
+ * only needs that lock while it copies the state. Orders are shared with
+ * BackendService rather than copied: apart from their status, which is
+ * written through its own record, they never change.
+ */
+public class MemoryStorageEngine implements StorageEngine {
+
+    private static final String SNAPSHOT_FILE = "snapshot.dat";
+
+    private final Path dir;
+    private final WriteAheadLog wal;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, BackendService.User> users = new LinkedHashMap<>();
+    private final Map<Integer, BackendService.Product> products = new LinkedHashMap<>();
+    private final Map<Long, BackendService.Order> orders = new LinkedHashMap<>();
+    private final Applier applier = new Applier();
+    private RecoveryStats recoveryStats = RecoveryStats.NONE;
+    private final AtomicBoolean checkpointRunning = new AtomicBoolean();
+    private volatile long lastCheckpoint;
+    private volatile IOException checkpointFailure;
+
+    private MemoryStorageEngine(Path dir, WriteAheadLog wal) {
+        this.dir = dir;
+        this.wal = wal;
+    }
+
+    public static MemoryStorageEngine open(Path dir, WriteAheadLog.Durability durability, long lingerMillis)
+            throws IOException {
+        MemoryStorageEngine engine = new MemoryStorageEngine(dir, new WriteAheadLog(dir, durability, lingerMillis));
+        engine.recover();
+        engine.startCheckpointer();
+        return engine;
+    }
+
+    private void recover() throws IOException {
+        SnapshotFile.Contents snapshot = SnapshotFile.load(dir.resolve(SNAPSHOT_FILE));
+        if (snapshot != null) {
+            for (BackendService.User user : snapshot.users) {
+                users.put(lookupKey(user.getUsername()), user);
+            }
+            for (BackendService.Product product : snapshot.products) {
+                products.put(product.getId(), product);
+            }
+            for (BackendService.Order order : snapshot.orders) {
+                orders.put(order.getId(), order);
+            }
+            lastCheckpoint = snapshot.walPosition;
+        }
+        PartitionedReplay replay = new PartitionedReplay(applier, PartitionedReplay.configuredThreads());
+        long discarded = 0;
+        try {
+            discarded = wal.replay(lastCheckpoint, replay);
+        } finally {
+            recoveryStats = replay.finish(discarded);
+        }
+    }
+
+    private final UserRepository userRepository = new UserRepository() {
+        @Override
+        public void forEach(Consumer<BackendService.User> action) {
+            for (BackendService.User user : copy(users.values())) {
+                action.accept(copyOf(user));
+            }
+        }
+    };
+
+    private final ProductRepository productRepository = new ProductRepository() {
+        @Override
+        public void forEach(Consumer<BackendService.Product> action) {
+            List<BackendService.Product> copies = new ArrayList<>();
+            lock.lock();
+            try {
+                for (BackendService.Product product : products.values()) {
+                    copies.add(copyOf(product));
+                }
+            } finally {
+                lock.unlock();
+            }
+            copies.forEach(action);
+        }
+    };
+
+    private final OrderRepository orderRepository = new OrderRepository() {
+        @Override
+        public void forEach(Consumer<BackendService.Order> action) {
+            copy(orders.values()).forEach(action);
+        }
+    };
+
+    @Override
+    public UserRepository users() {
+        return userRepository;
+    }
+
+    @Override
+    public ProductRepository products() {
+        return productRepository;
+    }
+
+    @Override
+    public OrderRepository orders() {
+        return orderRepository;
+    }
+
+    @Override
+    public void write(WriteBatch batch) {
+        if (batch.isEmpty()) {
+            return;
+        }
+        if (checkpointFailure != null) {
+            throw new UncheckedIOException("Checkpoint failed", checkpointFailure);
+        }
+        lock.lock();
+        try {
+            wal.append(batch.toByteArray());
+            batch.replay(applier);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Override
+    public RecoveryStats recoveryStats() {
+        return recoveryStats;
+    }
+
+    @Override
+    public void sync() {
+        wal.sync();
+    }
+
+    /**
+     * Writes a snapshot of the whole store and deletes the log segments it
+     * covers. Writers are only held off while the state is copied; encoding
+     * and fsync happen after the lock is released.
+     */
+    @Override
+    public boolean checkpoint() {
+        if (!checkpointRunning.compareAndSet(false, true)) {
+            return false;
+        }
+        try {
+            SnapshotFile.Contents contents;
+            lock.lock();
+            try {
+                List<BackendService.Product> productCopies = new ArrayList<>(products.size());
+                for (BackendService.Product product : products.values()) {
+                    productCopies.add(copyOf(product));
+                }
+                BackendService.Order[] orderArray = orders.values().toArray(new BackendService.Order[0]);
+                BackendService.OrderStatus[] statuses = new BackendService.OrderStatus[orderArray.length];
+                for (int i = 0; i < orderArray.length; i++) {
+                    statuses[i] = orderArray[i].getStatus();
+                }
+                // Users are replaced rather than changed in place, so the list itself is enough.
+                contents = new SnapshotFile.Contents(wal.position(), new ArrayList<>(users.values()),
+                    productCopies, orderArray, statuses);
+            } finally {
+                lock.unlock();
+            }
+
+            wal.roll();
+            SnapshotFile.write(dir.resolve(SNAPSHOT_FILE), contents);
+            wal.truncateBefore(contents.walPosition);
+            lastCheckpoint = contents.walPosition;
+            return true;
+        } catch (IOException e) {
+            checkpointFailure = e;
+            throw new UncheckedIOException("Cannot write snapshot", e);
+        } finally {
+            checkpointRunning.set(false);
+        }
+    }
+
+    @Override
+    public void close() {
+        wal.close();
+    }
+
+    private void startCheckpointer() {
+        long interval = Long.getLong("ims.checkpoint.intervalSeconds", 300);
+        long minBytes = Long.getLong("ims.checkpoint.minBytes", 1 << 20);
+        ScheduledExecutorService checkpointer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "checkpointer");
+            t.setDaemon(true);
+            return t;
+        });
+        checkpointer.scheduleWithFixedDelay(() -> {
+            if (wal.position() - lastCheckpoint >= minBytes) {
+                checkpoint();
+            }
+        }, interval, interval, TimeUnit.SECONDS);
+    }
+
+    private <T> List<T> copy(Collection<T> values) {
+        lock.lock();
+        try {
+            return new ArrayList<>(values);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    static BackendService.User copyOf(BackendService.User user) {
+        BackendService.User copy = new BackendService.User(user.getUsername(), user.getPassword(), user.getEmail());
+        copy.setPhone(user.getPhone());
+        return copy;
+    }
+
+    static BackendService.Product copyOf(BackendService.Product product) {
+        BackendService.Product copy = new BackendService.Product(product.getId(), product.getName(),
+            product.getPrice(), product.getQuantity());
+        copy.setReorderThreshold(product.getReorderThreshold());
+        return copy;
+    }
+
+    private static String lookupKey(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    /** Applies records to the maps; callers hold the lock (or are still recovering). */
+    private final class Applier implements WriteBatch.Handler {
+        @Override
+        public void user(String previousName, BackendService.User user) {
+            users.remove(lookupKey(previousName));
+            users.put(lookupKey(user.getUsername()), user);
+        }
+
+        @Override
+        public void product(BackendService.Product product) {
+            products.put(product.getId(), product);
+        }
+
+        @Override
+        public void productDeleted(int productId) {
+            products.remove(productId);
+        }
+
+        @Override
+        public void stock(int productId, int delta) {
+            BackendService.Product product = products.get(productId);
+            if (product != null) {
+                product.setQuantity(product.getQuantity() + delta);
+            }
+        }
+
+        @Override
+        public void order(BackendService.Order order) {
+            orders.put(order.getId(), order);
+        }
+
+        @Override
+        public void orderStatus(long orderId, BackendService.OrderStatus status) {
+            BackendService.Order order = orders.get(orderId);
+            if (order != null) {
+                order.setStatus(status);
+            }
+        }
+
+        @Override
+        public void orderDeleted(long orderId) {
+            orders.remove(orderId);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package SadSystem;
+
+import java.util.*;
+
+/**
+ * Trigram inverted index for case-insensitive substring search. Each item's
+ * text is lower-cased once when it is indexed; a query is answered by
+ * intersecting the posting sets of its trigrams and then confirming the
+ * surviving candidates with {@code contains}, so results match
+ * {@code text.toLowerCase().contains(query.toLowerCase())} exactly.
+ */
+public class NGramIndex<T> {
+
+    private static final int GRAM = 3;
+
+    private final Map<String, Set<T>> postings = new HashMap<>();
+    private final Map<T, String> folded = new HashMap<>();
+    private final Comparator<? super T> order;
+
+    public NGramIndex(Comparator<? super T> order) {
+        this.order = order;
+    }
+
+    public void add(T item, String text) {
+        String lower = text.toLowerCase();
+        String previous = folded.put(item, lower);
+        if (previous != null) {
+            for (String gram : grams(previous)) {
+                removePosting(gram, item);
+            }
+        }
+        for (String gram : grams(lower)) {
+            postings.computeIfAbsent(gram, g -> new HashSet<>()).add(item);
+        }
+    }
+
+    public void remove(T item) {
+        String previous = folded.remove(item);
+        if (previous == null) {
+            return;
+        }
+        for (String gram : grams(previous)) {
+            removePosting(gram, item);
+        }
+    }
+
+    public List<T> search(String query) {
+        String lowerQuery = query.toLowerCase();
+        List<T> result = new ArrayList<>();
+
+        if (lowerQuery.length() < GRAM) {
+            // Too short to produce a trigram, fall back to the pre-folded texts.
+            for (Map.Entry<T, String> entry : folded.entrySet()) {
+                if (entry.getValue().contains(lowerQuery)) {
+                    result.add(entry.getKey());
+                }
+            }
+        } else {
+            List<Set<T>> lists = new ArrayList<>();
+            for (String gram : grams(lowerQuery)) {
+                Set<T> posting = postings.get(gram);
+                if (posting == null) {
+                    return result;
+                }
+                lists.add(posting);
+            }
+            lists.sort(Comparator.comparingInt(Set::size));
+
+            Set<T> smallest = lists.get(0);
+            for (T candidate : smallest) {
+                boolean inAll = true;
+                for (int i = 1; i < lists.size() && inAll; i++) {
+                    inAll = lists.get(i).contains(candidate);
+                }
+                if (inAll && folded.get(candidate).contains(lowerQuery)) {
+                    result.add(candidate);
+                }
+            }
+        }
+        result.sort(order);
+        return result;
+    }
+
+    public int size() {
+        return folded.size();
+    }
+
+    private void removePosting(String gram, T item) {
+        Set<T> posting = postings.get(gram);
+        if (posting != null) {
+            posting.remove(item);
+            if (posting.isEmpty()) {
+                postings.remove(gram);
+            }
+        }
+    }
+
+    private static Set<String> grams(String text) {
+        Set<String> grams = new HashSet<>();
+        for (int i = 0; i + GRAM <= text.length(); i++) {
+            grams.add(text.substring(i, i + GRAM));
+        }
+        return grams;
+    }
+}
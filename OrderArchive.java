@@ -0,0 +1,523 @@
+package SadSystem;
+
+import java.io.IOException;
+import java.lang.ref.SoftReference;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Predicate;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Cold tier for finished orders. Each archival pass appends one block to
+ * the current segment file ({@code orders-NNNNNNNN.seg}); segments are
+ * never rewritten. A block is a small uncompressed header (id and date
+ * range, order count, and how many of its orders reference each product)
+ * followed by the deflated order records.
+ *
+ * Only the headers are kept in memory, so answering "how many archived
+ * orders use product X" or "does the archive cover this date range" never
+ * touches the payloads. A query that needs the orders themselves inflates
+ * just the blocks whose ranges it overlaps, and keeps them softly cached.
+ *
+ * An order that changed or was deleted while it was being archived is
+ * written off with a dead block rather than by editing the data block.
+ * Every block header carries the number of the data block it belongs to,
+ * so a write-off only hides the copies in that block: the same order can
+ * be archived again by a later pass.
+ *
+ * Blocks are encoded, deflated and synced under a separate append lock,
+ * so index queries never wait behind a write; the monitor only guards
+ * the in-memory index.
+ */
+public class OrderArchive {
+
+    private static final int BLOCK_MAGIC = 0x494D5341;
+    private static final byte DATA = 1;
+    private static final byte DEAD = 2;
+    private static final int PREAMBLE = 12;
+    private static final long SEGMENT_LIMIT = 64L << 20;
+    private static final String SEGMENT_PREFIX = "orders-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+
+    private final Path dir;
+    private final List<Block> blocks = new ArrayList<>();
+    private final IntHashMap<int[]> ordersByProduct = new IntHashMap<>();
+    private final Object appendLock = new Object();
+    private int size;
+    private int nextBlockNumber;
+    private long maxId;
+    private long discardedBytes;
+    private int segmentNumber;
+    private FileChannel segment;
+
+    public OrderArchive(Path dir) throws IOException {
+        this.dir = dir;
+        Files.createDirectories(dir);
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path path : stream) {
+                segments.add(path);
+            }
+        }
+        segments.sort(null);
+        for (int i = 0; i < segments.size(); i++) {
+            readIndex(segments.get(i), i == segments.size() - 1);
+        }
+        if (!segments.isEmpty()) {
+            segmentNumber = numberOf(segments.get(segments.size() - 1));
+        }
+        openSegment();
+    }
+
+    /**
+     * Durably appends a block holding {@code orders} with the given
+     * statuses. The block stays invisible to queries until it is
+     * {@link #publish published}.
+     */
+    public Block write(List<BackendService.Order> orders, List<BackendService.OrderStatus> statuses)
+            throws IOException {
+        int number;
+        synchronized (this) {
+            number = nextBlockNumber++;
+        }
+        return append(DATA, number, orders, statuses);
+    }
+
+    public synchronized void publish(Block block) {
+        blocks.add(block);
+        size += block.count;
+        maxId = Math.max(maxId, block.maxId);
+        countProducts(block, 1);
+    }
+
+    /**
+     * Writes off the copies in {@code block} of orders that no longer match
+     * the live order: they are left out of every query from now on.
+     */
+    public void markDead(Block block, List<BackendService.Order> orders,
+                         List<BackendService.OrderStatus> statuses) throws IOException {
+        Block dead = append(DEAD, block.number, orders, statuses);
+        synchronized (this) {
+            applyDead(dead, orders);
+        }
+    }
+
+    /** Number of archived orders. */
+    public synchronized int size() {
+        return size;
+    }
+
+    /** The most recently written data block, or null. */
+    public synchronized Block lastBlock() {
+        return blocks.isEmpty() ? null : blocks.get(blocks.size() - 1);
+    }
+
+    /** The largest order id ever archived, including written-off copies; 0 if none. */
+    public synchronized long getMaxId() {
+        return maxId;
+    }
+
+    public synchronized int countForProduct(int productId) {
+        int[] count = ordersByProduct.get(productId);
+        return count == null ? 0 : count[0];
+    }
+
+    /** Bytes of a torn block cut off the last segment when the archive was opened. */
+    public synchronized long getDiscardedBytes() {
+        return discardedBytes;
+    }
+
+    public BackendService.Order find(long id) {
+        for (Block block : dataBlocks()) {
+            if (id >= block.minId && id <= block.maxId) {
+                for (BackendService.Order order : load(block)) {
+                    if (order.getId() == id) {
+                        return order;
+                    }
+                }
+            }
+        }
+        return null;
+    }
+
+    /** Archived orders dated within [from, to]. */
+    public List<BackendService.Order> ordersBetween(long from, long to) {
+        List<BackendService.Order> result = new ArrayList<>();
+        for (Block block : dataBlocks()) {
+            if (block.maxTime >= from && block.minTime <= to) {
+                for (BackendService.Order order : load(block)) {
+                    long time = order.getDate().getTime();
+                    if (time >= from && time <= to) {
+                        result.add(order);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    public List<BackendService.Order> ordersContaining(int productId) {
+        List<BackendService.Order> result = new ArrayList<>();
+        for (Block block : dataBlocks()) {
+            if (Arrays.binarySearch(block.productIds, productId) >= 0) {
+                for (BackendService.Order order : load(block)) {
+                    for (BackendService.OrderItem item : order.getItems()) {
+                        if (item.getProductId() == productId) {
+                            result.add(order);
+                            break;
+                        }
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Every archived order the filter accepts; inflates the whole archive. */
+    public List<BackendService.Order> matching(Predicate<BackendService.Order> filter) {
+        List<BackendService.Order> result = new ArrayList<>();
+        for (Block block : dataBlocks()) {
+            for (BackendService.Order order : load(block)) {
+                if (filter.test(order)) {
+                    result.add(order);
+                }
+            }
+        }
+        return result;
+    }
+
+    /** The live orders of a data block, inflated on first use. */
+    public List<BackendService.Order> load(Block block) {
+        List<BackendService.Order> orders = block.cached != null ? block.cached.get() : null;
+        if (orders == null) {
+            orders = inflate(block);
+            synchronized (this) {
+                List<BackendService.Order> live = new ArrayList<>(orders.size());
+                for (BackendService.Order order : orders) {
+                    if (block.deadIds == null || !block.deadIds.contains(order.getId())) {
+                        live.add(order);
+                    }
+                }
+                orders = Collections.unmodifiableList(live);
+                block.cached = new SoftReference<>(orders);
+            }
+        }
+        return orders;
+    }
+
+    /** Closes the current segment; waits for a block being appended. */
+    public void close() throws IOException {
+        synchronized (appendLock) {
+            segment.close();
+        }
+    }
+
+    private synchronized List<Block> dataBlocks() {
+        return new ArrayList<>(blocks);
+    }
+
+    private Block append(byte kind, int number, List<BackendService.Order> orders,
+                         List<BackendService.OrderStatus> statuses) throws IOException {
+        DomainCodec.Writer records = new DomainCodec.Writer(orders.size() * 64);
+        records.writeByte(DomainCodec.VERSION);
+        Block block = new Block(kind);
+        block.number = number;
+        Map<Integer, Integer> products = new HashMap<>();
+        for (int i = 0; i < orders.size(); i++) {
+            BackendService.Order order = orders.get(i);
+            DomainCodec.writeOrder(records, order, statuses.get(i));
+            block.include(order);
+            Set<Integer> seen = new HashSet<>();
+            for (BackendService.OrderItem item : order.getItems()) {
+                if (seen.add(item.getProductId())) {
+                    products.merge(item.getProductId(), 1, Integer::sum);
+                }
+            }
+        }
+        block.setProducts(products);
+        byte[] raw = records.toByteArray();
+        Deflater deflater = new Deflater();
+        deflater.setInput(raw);
+        deflater.finish();
+        byte[] compressed = new byte[Math.max(64, raw.length / 2)];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == compressed.length) {
+                compressed = Arrays.copyOf(compressed, compressed.length << 1);
+            }
+            length += deflater.deflate(compressed, length, compressed.length - length);
+        }
+        deflater.end();
+        block.rawLength = raw.length;
+        block.payloadLength = length;
+        block.payloadCrc = crc(compressed, 0, length);
+        byte[] header = block.header();
+        ByteBuffer frame = ByteBuffer.allocate(PREAMBLE + header.length + length);
+        frame.putInt(BLOCK_MAGIC).putInt(header.length).putInt(crc(header, 0, header.length));
+        frame.put(header).put(compressed, 0, length).flip();
+
+        synchronized (appendLock) {
+            if (segment.size() >= SEGMENT_LIMIT) {
+                segment.close();
+                segmentNumber++;
+                openSegment();
+            }
+            long start = segment.size();
+            block.segment = segmentPath(segmentNumber);
+            block.payloadOffset = start + PREAMBLE + header.length;
+            while (frame.hasRemaining()) {
+                segment.write(frame, start + frame.position());
+            }
+            segment.force(false);
+        }
+        return block;
+    }
+
+    private void applyDead(Block dead, List<BackendService.Order> orders) throws IOException {
+        Block target = null;
+        for (int i = blocks.size() - 1; i >= 0 && target == null; i--) {
+            if (blocks.get(i).number == dead.number) {
+                target = blocks.get(i);
+            }
+        }
+        if (target == null) {
+            throw new IOException("Dead block refers to unknown data block " + dead.number);
+        }
+        if (target.deadIds == null) {
+            target.deadIds = new HashSet<>();
+        }
+        for (BackendService.Order order : orders) {
+            target.deadIds.add(order.getId());
+        }
+        target.cached = null;
+        size -= dead.count;
+        countProducts(dead, -1);
+    }
+
+    private void countProducts(Block block, int sign) {
+        for (int i = 0; i < block.productIds.length; i++) {
+            int[] count = ordersByProduct.get(block.productIds[i]);
+            if (count == null) {
+                count = new int[1];
+                ordersByProduct.put(block.productIds[i], count);
+            }
+            count[0] += sign * block.productCounts[i];
+            if (count[0] == 0) {
+                ordersByProduct.remove(block.productIds[i]);
+            }
+        }
+    }
+
+    private List<BackendService.Order> inflate(Block block) {
+        try (FileChannel in = FileChannel.open(block.segment, StandardOpenOption.READ)) {
+            ByteBuffer compressed = ByteBuffer.allocate(block.payloadLength);
+            while (compressed.hasRemaining()) {
+                if (in.read(compressed, block.payloadOffset + compressed.position()) < 0) {
+                    throw new IOException("Archive block truncated in " + block.segment);
+                }
+            }
+            if (crc(compressed.array(), 0, block.payloadLength) != block.payloadCrc) {
+                throw new IOException("Archive block checksum mismatch in " + block.segment);
+            }
+            Inflater inflater = new Inflater();
+            inflater.setInput(compressed.array());
+            byte[] raw = new byte[block.rawLength];
+            int length = 0;
+            while (length < raw.length && !inflater.finished()) {
+                length += inflater.inflate(raw, length, raw.length - length);
+            }
+            inflater.end();
+            ByteBuffer records = ByteBuffer.wrap(raw, 0, length);
+            if (records.get() != DomainCodec.VERSION) {
+                throw new IOException("Unsupported archive block version in " + block.segment);
+            }
+            List<BackendService.Order> orders = new ArrayList<>(block.count);
+            while (records.hasRemaining()) {
+                orders.add(DomainCodec.readOrder(records));
+            }
+            return orders;
+        } catch (IOException | DataFormatException e) {
+            throw new IllegalStateException("Cannot read archived orders", e);
+        }
+    }
+
+    /** Reads the block headers of one segment; cuts a torn tail off the last one. */
+    private void readIndex(Path path, boolean last) throws IOException {
+        try (FileChannel in = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long size = in.size();
+            long position = 0;
+            while (position < size) {
+                Block block = readHeader(in, position, size);
+                if (block == null) {
+                    if (!last) {
+                        throw new IOException("Corrupt archive segment " + path);
+                    }
+                    discardedBytes += size - position;
+                    in.truncate(position);
+                    in.force(true);
+                    break;
+                }
+                block.segment = path;
+                if (block.kind == DATA) {
+                    nextBlockNumber = Math.max(nextBlockNumber, block.number + 1);
+                    publish(block);
+                } else {
+                    applyDead(block, inflate(block));
+                }
+                position = block.payloadOffset + block.payloadLength;
+            }
+        }
+    }
+
+    private static Block readHeader(FileChannel in, long position, long size) throws IOException {
+        if (position + PREAMBLE > size) {
+            return null;
+        }
+        ByteBuffer preamble = ByteBuffer.allocate(PREAMBLE);
+        readFully(in, preamble, position);
+        int headerLength = preamble.getInt(4);
+        if (preamble.getInt(0) != BLOCK_MAGIC || headerLength <= 0 || position + PREAMBLE + headerLength > size) {
+            return null;
+        }
+        ByteBuffer header = ByteBuffer.allocate(headerLength);
+        readFully(in, header, position + PREAMBLE);
+        if (crc(header.array(), 0, headerLength) != preamble.getInt(8)) {
+            return null;
+        }
+        Block block = Block.parse(header.flip());
+        block.payloadOffset = position + PREAMBLE + headerLength;
+        return block.payloadOffset + block.payloadLength <= size ? block : null;
+    }
+
+    private static void readFully(FileChannel in, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (in.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Unexpected end of archive segment");
+            }
+        }
+    }
+
+    private void openSegment() throws IOException {
+        segment = FileChannel.open(segmentPath(segmentNumber), StandardOpenOption.CREATE,
+            StandardOpenOption.READ, StandardOpenOption.WRITE);
+    }
+
+    private Path segmentPath(int number) {
+        return dir.resolve(String.format("%s%08d%s", SEGMENT_PREFIX, number, SEGMENT_SUFFIX));
+    }
+
+    private static int numberOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Integer.parseInt(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+    }
+
+    private static int crc(byte[] bytes, int offset, int length) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes, offset, length);
+        return (int) crc.getValue();
+    }
+
+    /** Index entry for one block; everything but the cache and write-offs comes from its header. */
+    public static final class Block {
+        private final byte kind;
+        private int number;
+        private int count;
+        private long minId = Long.MAX_VALUE;
+        private long maxId = Long.MIN_VALUE;
+        private long minTime = Long.MAX_VALUE;
+        private long maxTime = Long.MIN_VALUE;
+        private int[] productIds = new int[0];
+        private int[] productCounts = new int[0];
+        private int rawLength;
+        private int payloadLength;
+        private int payloadCrc;
+        private Path segment;
+        private long payloadOffset;
+        private Set<Long> deadIds;
+        private volatile SoftReference<List<BackendService.Order>> cached;
+
+        private Block(byte kind) {
+            this.kind = kind;
+        }
+
+        public long getMinId() { return minId; }
+
+        public long getMaxId() { return maxId; }
+
+        private void include(BackendService.Order order) {
+            count++;
+            minId = Math.min(minId, order.getId());
+            maxId = Math.max(maxId, order.getId());
+            minTime = Math.min(minTime, order.getDate().getTime());
+            maxTime = Math.max(maxTime, order.getDate().getTime());
+        }
+
+        private void setProducts(Map<Integer, Integer> products) {
+            productIds = new int[products.size()];
+            int i = 0;
+            for (int productId : products.keySet()) {
+                productIds[i++] = productId;
+            }
+            Arrays.sort(productIds);
+            productCounts = new int[productIds.length];
+            for (i = 0; i < productIds.length; i++) {
+                productCounts[i] = products.get(productIds[i]);
+            }
+        }
+
+        private byte[] header() {
+            DomainCodec.Writer out = new DomainCodec.Writer();
+            out.writeByte(kind)
+                .writeVarint(number)
+                .writeVarint(count)
+                .writeVarint(minId).writeVarint(maxId)
+                .writeVarint(minTime).writeVarint(maxTime)
+                .writeVarint(rawLength).writeVarint(payloadLength).writeVarint(payloadCrc & 0xFFFFFFFFL)
+                .writeVarint(productIds.length);
+            int previous = 0;
+            for (int i = 0; i < productIds.length; i++) {
+                out.writeVarint(productIds[i] - previous).writeVarint(productCounts[i]);
+                previous = productIds[i];
+            }
+            return out.toByteArray();
+        }
+
+        private static Block parse(ByteBuffer in) {
+            Block block = new Block(in.get());
+            block.number = (int) DomainCodec.readVarint(in);
+            block.count = (int) DomainCodec.readVarint(in);
+            block.minId = DomainCodec.readVarint(in);
+            block.maxId = DomainCodec.readVarint(in);
+            block.minTime = DomainCodec.readVarint(in);
+            block.maxTime = DomainCodec.readVarint(in);
+            block.rawLength = (int) DomainCodec.readVarint(in);
+            block.payloadLength = (int) DomainCodec.readVarint(in);
+            block.payloadCrc = (int) DomainCodec.readVarint(in);
+            int products = (int) DomainCodec.readVarint(in);
+            block.productIds = new int[products];
+            block.productCounts = new int[products];
+            int previous = 0;
+            for (int i = 0; i < products; i++) {
+                previous += (int) DomainCodec.readVarint(in);
+                block.productIds[i] = previous;
+                block.productCounts[i] = (int) DomainCodec.readVarint(in);
+            }
+            return block;
+        }
+    }
+}
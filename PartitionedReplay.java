@@ -0,0 +1,235 @@
+package SadSystem;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Replays write-ahead log entries into a {@link WriteBatch.Handler} on
+ * several threads. The log reader (the caller) still frames and checksums
+ * entries in order, so a torn tail is found exactly as before; it only
+ * collects them into chunks. A pool decodes chunks in parallel, and three
+ * applier threads, one each for users, products and orders, apply their
+ * own records from every chunk in log order.
+ *
+ * That is safe because every record touches a single entity kind and the
+ * handlers of the engines only touch the structures of that kind: stock
+ * deltas land in the product partition behind the product writes they
+ * follow, status changes in the order partition behind their order.
+ *
+ * With one thread the entries are simply decoded and applied inline.
+ */
+final class PartitionedReplay implements Consumer<byte[]> {
+
+    private static final int CHUNK_ENTRIES = 256;
+    private static final int QUEUED_CHUNKS = 64;
+    private static final int USERS = 0;
+    private static final int PRODUCTS = 1;
+    private static final int ORDERS = 2;
+    private static final CompletableFuture<Chunk> END = CompletableFuture.completedFuture(null);
+
+    private final WriteBatch.Handler target;
+    private final int threads;
+    private final long started = System.nanoTime();
+    private ExecutorService decoders;
+    private List<BlockingQueue<CompletableFuture<Chunk>>> queues;
+    private Thread[] appliers;
+    private final Throwable[] failures = new Throwable[3];
+    private final long[] applied = new long[3];
+    private List<byte[]> pending = new ArrayList<>(CHUNK_ENTRIES);
+    private long entries;
+    private long inlineRecords;
+
+    PartitionedReplay(WriteBatch.Handler target, int threads) {
+        this.target = target;
+        this.threads = Math.max(1, threads);
+        if (this.threads > 1) {
+            start();
+        }
+    }
+
+    /** Thread count from {@code ims.recovery.threads}, by default one per core. */
+    static int configuredThreads() {
+        return Integer.getInteger("ims.recovery.threads", Runtime.getRuntime().availableProcessors());
+    }
+
+    private void start() {
+        AtomicInteger decoderNumber = new AtomicInteger();
+        decoders = Executors.newFixedThreadPool(threads, r -> {
+            Thread t = new Thread(r, "recovery-decoder-" + decoderNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        queues = new ArrayList<>(3);
+        appliers = new Thread[3];
+        String[] names = {"users", "products", "orders"};
+        for (int partition = 0; partition < 3; partition++) {
+            BlockingQueue<CompletableFuture<Chunk>> queue = new ArrayBlockingQueue<>(QUEUED_CHUNKS);
+            queues.add(queue);
+            int p = partition;
+            appliers[partition] = new Thread(() -> apply(p, queue), "recovery-" + names[partition]);
+            appliers[partition].setDaemon(true);
+            appliers[partition].start();
+        }
+    }
+
+    @Override
+    public void accept(byte[] payload) {
+        entries++;
+        if (threads == 1) {
+            inlineRecords += WriteBatch.decode(payload, target);
+            return;
+        }
+        pending.add(payload);
+        if (pending.size() == CHUNK_ENTRIES) {
+            dispatch();
+        }
+    }
+
+    /**
+     * Waits for every entry to be applied and reports what was replayed,
+     * along with the torn-tail bytes the log reader cut off. Throws if
+     * decoding or applying any record failed.
+     */
+    RecoveryStats finish(long discardedBytes) {
+        if (threads > 1) {
+            dispatch();
+            enqueue(END);
+            boolean interrupted = false;
+            for (Thread applier : appliers) {
+                while (applier.isAlive()) {
+                    try {
+                        applier.join();
+                    } catch (InterruptedException e) {
+                        interrupted = true;
+                    }
+                }
+            }
+            decoders.shutdown();
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+            for (Throwable failure : failures) {
+                if (failure != null) {
+                    throw new IllegalStateException("Write-ahead log replay failed", failure);
+                }
+            }
+        }
+        long records = inlineRecords + applied[USERS] + applied[PRODUCTS] + applied[ORDERS];
+        return new RecoveryStats(entries, records, threads, System.nanoTime() - started, discardedBytes);
+    }
+
+    private void dispatch() {
+        if (pending.isEmpty()) {
+            return;
+        }
+        List<byte[]> batch = pending;
+        pending = new ArrayList<>(CHUNK_ENTRIES);
+        enqueue(CompletableFuture.supplyAsync(() -> {
+            Chunk chunk = new Chunk();
+            for (byte[] payload : batch) {
+                WriteBatch.decode(payload, chunk);
+            }
+            return chunk;
+        }, decoders));
+    }
+
+    /** Blocks while the appliers are {@value #QUEUED_CHUNKS} chunks behind. */
+    private void enqueue(CompletableFuture<Chunk> chunk) {
+        for (BlockingQueue<CompletableFuture<Chunk>> queue : queues) {
+            boolean interrupted = false;
+            while (true) {
+                try {
+                    queue.put(chunk);
+                    break;
+                } catch (InterruptedException e) {
+                    interrupted = true;
+                }
+            }
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    private void apply(int partition, BlockingQueue<CompletableFuture<Chunk>> queue) {
+        while (true) {
+            CompletableFuture<Chunk> next;
+            try {
+                next = queue.take();
+            } catch (InterruptedException e) {
+                // Nothing interrupts the appliers but a dying JVM; keep draining so the reader is never stuck.
+                continue;
+            }
+            if (next == END) {
+                return;
+            }
+            if (failures[partition] != null) {
+                continue;
+            }
+            try {
+                applied[partition] += next.get().replay(partition, target);
+            } catch (ExecutionException e) {
+                failures[partition] = e.getCause();
+            } catch (InterruptedException | RuntimeException e) {
+                failures[partition] = e;
+            }
+        }
+    }
+
+    /** Decoded records of a run of log entries, split by entity kind. */
+    private static final class Chunk implements WriteBatch.Handler {
+        private final List<List<Consumer<WriteBatch.Handler>>> records =
+            List.of(new ArrayList<>(), new ArrayList<>(), new ArrayList<>());
+
+        int replay(int partition, WriteBatch.Handler handler) {
+            List<Consumer<WriteBatch.Handler>> list = records.get(partition);
+            for (Consumer<WriteBatch.Handler> record : list) {
+                record.accept(handler);
+            }
+            return list.size();
+        }
+
+        @Override
+        public void user(String previousName, BackendService.User user) {
+            records.get(USERS).add(h -> h.user(previousName, user));
+        }
+
+        @Override
+        public void product(BackendService.Product product) {
+            records.get(PRODUCTS).add(h -> h.product(product));
+        }
+
+        @Override
+        public void productDeleted(int productId) {
+            records.get(PRODUCTS).add(h -> h.productDeleted(productId));
+        }
+
+        @Override
+        public void stock(int productId, int delta) {
+            records.get(PRODUCTS).add(h -> h.stock(productId, delta));
+        }
+
+        @Override
+        public void order(BackendService.Order order) {
+            records.get(ORDERS).add(h -> h.order(order));
+        }
+
+        @Override
+        public void orderStatus(long orderId, BackendService.OrderStatus status) {
+            records.get(ORDERS).add(h -> h.orderStatus(orderId, status));
+        }
+
+        @Override
+        public void orderDeleted(long orderId) {
+            records.get(ORDERS).add(h -> h.orderDeleted(orderId));
+        }
+    }
+}
@@ -0,0 +1,67 @@
+package SadSystem;
+
+import java.util.Arrays;
+
+/**
+ * Struct-of-arrays mirror of the product catalog. Every product occupies a
+ * dense slot, and its quantity and price (in cents) sit in parallel
+ * primitive arrays, so the inventory valuation runs as a straight loop
+ * without touching the Product objects. Removal swaps the last slot into
+ * the hole to keep the arrays dense.
+ */
+public class ProductColumns {
+
+    private int[] ids = new int[16];
+    private int[] quantity = new int[16];
+    private long[] priceCents = new long[16];
+    private int size;
+
+    public int add(int id, int qty, long cents) {
+        if (size == ids.length) {
+            int capacity = size << 1;
+            ids = Arrays.copyOf(ids, capacity);
+            quantity = Arrays.copyOf(quantity, capacity);
+            priceCents = Arrays.copyOf(priceCents, capacity);
+        }
+        int slot = size++;
+        ids[slot] = id;
+        quantity[slot] = qty;
+        priceCents[slot] = cents;
+        return slot;
+    }
+
+    /**
+     * Removes the given slot and returns the id of the product that was moved
+     * into it, or -1 if the removed slot was the last one.
+     */
+    public int remove(int slot) {
+        int last = --size;
+        if (slot == last) {
+            return -1;
+        }
+        ids[slot] = ids[last];
+        quantity[slot] = quantity[last];
+        priceCents[slot] = priceCents[last];
+        return ids[slot];
+    }
+
+    public void setQuantity(int slot, int qty) {
+        quantity[slot] = qty;
+    }
+
+    public void setPriceCents(int slot, long cents) {
+        priceCents[slot] = cents;
+    }
+
+    public long valuationCents() {
+        long total = 0;
+        for (int i = 0; i < size; i++) {
+            total += quantity[i] * priceCents[i];
+        }
+        return total;
+    }
+
+    public static long toCents(double price) {
+        return Math.round(price * 100.0);
+    }
+}
@@ -0,0 +1,263 @@
+package SadSystem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * Streams a product CSV ({@code name,price,quantity}) into the catalog.
+ * Lines are read in fixed-size chunks, each chunk is parsed and validated
+ * on a worker thread, and parsed chunks are upserted in file order, one
+ * catalog write lock per chunk. At most a few chunks are held at once, so
+ * memory stays flat no matter how large the file is.
+ *
+ * Bad rows are reported with their line number and skipped; they never
+ * abort the import. A header row is recognised and skipped. A quoted
+ * field may span lines, so a row is numbered by the line it starts on.
+ * Prices are plain decimals: no exponents, hex, NaN or Infinity.
+ */
+public class ProductCsvImporter {
+
+    private static final int CHUNK_SIZE = 4096;
+    private static final int MAX_REPORTED_ERRORS = 1000;
+    private static final Pattern DECIMAL = Pattern.compile("[+-]?(\\d+(\\.\\d*)?|\\.\\d+)");
+
+    private final BackendService backend;
+
+    public ProductCsvImporter(BackendService backend) {
+        this.backend = backend;
+    }
+
+    public ImportReport importFrom(Reader source) throws IOException {
+        int workers = Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        AtomicInteger count = new AtomicInteger();
+        ExecutorService parsers = Executors.newFixedThreadPool(workers, r -> {
+            Thread t = new Thread(r, "csv-import-" + count.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        ImportReport report = new ImportReport();
+        ArrayDeque<Future<ParsedChunk>> inFlight = new ArrayDeque<>();
+
+        try (BufferedReader reader = new BufferedReader(source)) {
+            int lineNumber = 0;
+            List<String> rows = new ArrayList<>(CHUNK_SIZE);
+            int[] rowLines = new int[CHUNK_SIZE];
+            StringBuilder row = new StringBuilder();
+            boolean quoted = false;
+            String line;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (quoted) {
+                    row.append('\n');
+                } else {
+                    rowLines[rows.size()] = lineNumber;
+                }
+                row.append(line);
+                // Every quote toggles the state, doubled quotes included, just as splitFields reads them.
+                quoted ^= (line.chars().filter(c -> c == '"').count() & 1) != 0;
+                if (quoted) {
+                    continue;
+                }
+                rows.add(row.toString());
+                row.setLength(0);
+                if (rows.size() == CHUNK_SIZE) {
+                    submit(parsers, inFlight, rowLines, rows);
+                    rows = new ArrayList<>(CHUNK_SIZE);
+                    rowLines = new int[CHUNK_SIZE];
+                    if (inFlight.size() > workers) {
+                        apply(inFlight.poll(), report);
+                    }
+                }
+            }
+            if (quoted) {
+                // Left open at the end of the file; parse reports it as unterminated.
+                rows.add(row.toString());
+            }
+            if (!rows.isEmpty()) {
+                submit(parsers, inFlight, rowLines, rows);
+            }
+            while (!inFlight.isEmpty()) {
+                apply(inFlight.poll(), report);
+            }
+        } finally {
+            for (Future<ParsedChunk> pending : inFlight) {
+                pending.cancel(true);
+            }
+            parsers.shutdownNow();
+        }
+        return report;
+    }
+
+    private static void submit(ExecutorService parsers, ArrayDeque<Future<ParsedChunk>> inFlight,
+                               int[] rowLines, List<String> rows) {
+        inFlight.add(parsers.submit(() -> parse(rowLines, rows)));
+    }
+
+    private void apply(Future<ParsedChunk> pending, ImportReport report) throws IOException {
+        ParsedChunk chunk;
+        try {
+            chunk = pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Import interrupted", e);
+        } catch (ExecutionException e) {
+            throw new IOException("Failed to parse import chunk", e.getCause());
+        }
+        int created = backend.upsertProducts(chunk.rows);
+        report.created += created;
+        report.updated += chunk.rows.size() - created;
+        for (RowError error : chunk.errors) {
+            report.addError(error);
+        }
+    }
+
+    private static ParsedChunk parse(int[] rowLines, List<String> rows) {
+        ParsedChunk chunk = new ParsedChunk();
+        for (int i = 0; i < rows.size(); i++) {
+            int lineNumber = rowLines[i];
+            String row = rows.get(i);
+            if (row.trim().isEmpty()) {
+                continue;
+            }
+            List<String> fields = splitFields(row);
+            if (fields == null) {
+                chunk.errors.add(new RowError(lineNumber, "Unterminated quoted field"));
+                continue;
+            }
+            if (lineNumber == 1 && isHeader(fields)) {
+                continue;
+            }
+            if (fields.size() != 3) {
+                chunk.errors.add(new RowError(lineNumber, "Expected 3 fields but found " + fields.size()));
+                continue;
+            }
+
+            String name = fields.get(0).trim();
+            String priceText = fields.get(1).trim();
+            int quantity;
+            if (!DECIMAL.matcher(priceText).matches()) {
+                chunk.errors.add(new RowError(lineNumber, "Invalid price \"" + priceText + "\""));
+                continue;
+            }
+            double price = Double.parseDouble(priceText);
+            try {
+                quantity = Integer.parseInt(fields.get(2).trim());
+            } catch (NumberFormatException e) {
+                chunk.errors.add(new RowError(lineNumber, "Invalid quantity \"" + fields.get(2).trim() + "\""));
+                continue;
+            }
+
+            String problem = BackendService.validateProduct(name, price, quantity);
+            if (problem != null) {
+                chunk.errors.add(new RowError(lineNumber, problem));
+                continue;
+            }
+            chunk.rows.add(new BackendService.ProductUpsert(name, price, quantity));
+        }
+        return chunk;
+    }
+
+    private static boolean isHeader(List<String> fields) {
+        return !fields.isEmpty() && fields.get(0).trim().toLowerCase(Locale.ROOT).equals("name");
+    }
+
+    /**
+     * Splits one CSV row, honouring double-quoted fields (which may hold
+     * line breaks) and doubled quotes inside them. Returns null if a quote
+     * is left open.
+     */
+    private static List<String> splitFields(String line) {
+        List<String> fields = new ArrayList<>(3);
+        StringBuilder field = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"') {
+                    if (i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                        field.append('"');
+                        i++;
+                    } else {
+                        quoted = false;
+                    }
+                } else {
+                    field.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                fields.add(field.toString());
+                field.setLength(0);
+            } else {
+                field.append(c);
+            }
+        }
+        if (quoted) {
+            return null;
+        }
+        fields.add(field.toString());
+        return fields;
+    }
+
+    private static class ParsedChunk {
+        final List<BackendService.ProductUpsert> rows = new ArrayList<>();
+        final List<RowError> errors = new ArrayList<>();
+    }
+
+    public static class RowError {
+        private final int line;
+        private final String message;
+
+        RowError(int line, String message) {
+            this.line = line;
+            this.message = message;
+        }
+
+        public int getLine() { return line; }
+
+        public String getMessage() { return message; }
+
+        @Override
+        public String toString() {
+            return "Line " + line + ": " + message;
+        }
+    }
+
+    /**
+     * Outcome of one import. Only the first {@value #MAX_REPORTED_ERRORS}
+     * row errors are kept; {@link #getErrorCount} counts all of them.
+     */
+    public static class ImportReport {
+        private int created;
+        private int updated;
+        private int errorCount;
+        private final List<RowError> errors = new ArrayList<>();
+
+        private void addError(RowError error) {
+            errorCount++;
+            if (errors.size() < MAX_REPORTED_ERRORS) {
+                errors.add(error);
+            }
+        }
+
+        public int getCreated() { return created; }
+
+        public int getUpdated() { return updated; }
+
+        public int getErrorCount() { return errorCount; }
+
+        public List<RowError> getErrors() { return Collections.unmodifiableList(errors); }
+    }
+}
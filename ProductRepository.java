@@ -0,0 +1,12 @@
+package SadSystem;
+
+import java.util.function.Consumer;
+
+/**
+ * Read access to the products a {@link StorageEngine} holds. Changes go
+ * through {@link WriteBatch} so they can be grouped with other records.
+ */
+public interface ProductRepository {
+
+    void forEach(Consumer<BackendService.Product> action);
+}
@@ -0,0 +1,223 @@
+package SadSystem;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Measures how long BackendService takes to become ready after a crash.
+ *
+ * For every size given on the command line (log records, default 1M, 10M
+ * and 50M) it starts a writer JVM on a fresh data directory, waits until
+ * the writer has committed that many records, kills it with
+ * {@code destroyForcibly} while it is still writing, appends a torn frame
+ * to the newest log segment, and then boots a second JVM on the directory.
+ * The boot JVM reports time-to-ready and the replay statistics.
+ *
+ * Child JVMs get this JVM's options, so {@code -Xmx}, {@code ims.storage}
+ * and {@code ims.recovery.threads} apply to both. The writer runs with
+ * async durability and checkpoints disabled, so the whole history has to
+ * be replayed. {@code -Dims.bench.dir} picks where the data directories
+ * go; they are deleted afterwards unless {@code -Dims.bench.keep=true}.
+ *
+ * <pre>java -Xmx8g -cp . SadSystem.RecoveryBenchmark 1000000 10000000</pre>
+ */
+public class RecoveryBenchmark {
+
+    private static final int PRODUCTS = 1000;
+    private static final int PROGRESS_EVERY = 100_000;
+
+    public static void main(String[] args) throws Exception {
+        if (args.length > 0 && args[0].equals("write")) {
+            write();
+            return;
+        }
+        if (args.length > 0 && args[0].equals("boot")) {
+            boot();
+            return;
+        }
+
+        List<Long> sizes = new ArrayList<>();
+        for (String arg : args) {
+            sizes.add(Long.parseLong(arg.replace("_", "")));
+        }
+        if (sizes.isEmpty()) {
+            Collections.addAll(sizes, 1_000_000L, 10_000_000L, 50_000_000L);
+        }
+
+        System.out.printf("%12s %10s %10s %12s %14s %12s %8s%n",
+            "records", "log MB", "ready ms", "process ms", "replayed", "records/s", "torn B");
+        for (long size : sizes) {
+            run(size);
+        }
+    }
+
+    private static void run(long records) throws IOException, InterruptedException {
+        Path base = Path.of(System.getProperty("ims.bench.dir", System.getProperty("java.io.tmpdir")));
+        Files.createDirectories(base);
+        Path dir = Files.createTempDirectory(base, "recovery-");
+        try {
+            Process writer = start(dir, "write");
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(writer.getInputStream()))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    if (line.startsWith("written ") && Long.parseLong(line.substring(8)) >= records) {
+                        break;
+                    }
+                }
+                if (line == null) {
+                    throw new IllegalStateException("Writer exited early with status " + writer.waitFor());
+                }
+            }
+            writer.destroyForcibly();
+            writer.waitFor();
+            tearTail(dir);
+            long logBytes = logBytes(dir);
+
+            long started = System.nanoTime();
+            Process booter = start(dir, "boot");
+            String report = null;
+            try (BufferedReader out = new BufferedReader(new InputStreamReader(booter.getInputStream()))) {
+                String line;
+                while ((line = out.readLine()) != null) {
+                    if (line.startsWith("ready ")) {
+                        report = line;
+                    }
+                }
+            }
+            int status = booter.waitFor();
+            long processMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+            if (report == null || status != 0) {
+                throw new IllegalStateException("Boot failed with status " + status);
+            }
+            String[] fields = report.split(" ");
+            System.out.printf("%,12d %10.1f %10s %,12d %,14d %,12d %8s%n", records, logBytes / 1048576.0,
+                fields[1], processMillis, Long.parseLong(fields[2]), Long.parseLong(fields[3]), fields[4]);
+        } finally {
+            if (!Boolean.getBoolean("ims.bench.keep")) {
+                delete(dir);
+            }
+        }
+    }
+
+    private static Process start(Path dir, String mode) throws IOException {
+        List<String> command = new ArrayList<>();
+        command.add(Path.of(System.getProperty("java.home"), "bin", "java").toString());
+        for (String option : ManagementFactory.getRuntimeMXBean().getInputArguments()) {
+            if (!option.startsWith("-Dims.data.dir=") && !option.startsWith("-Dims.durability=")) {
+                command.add(option);
+            }
+        }
+        command.add("-Dims.data.dir=" + dir);
+        command.add("-Dims.durability=async");
+        command.add("-Dims.checkpoint.intervalSeconds=" + Integer.MAX_VALUE);
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(RecoveryBenchmark.class.getName());
+        command.add(mode);
+        return new ProcessBuilder(command).redirectError(ProcessBuilder.Redirect.INHERIT).start();
+    }
+
+    /**
+     * Commits records until killed: a catalog, then a mix of new orders
+     * (two records each), status changes and stock movements.
+     */
+    private static void write() {
+        BackendService service = BackendService.getInstance();
+        Random random = new Random(42);
+        long written = 0;
+        for (int i = 0; i < PRODUCTS; i++) {
+            service.addProduct("Bench product " + i, 1 + random.nextInt(100), 1_000_000);
+            written++;
+        }
+        List<BackendService.Product> products = service.getAllProducts();
+        List<Long> orderIds = new ArrayList<>();
+        long nextReport = PROGRESS_EVERY;
+        for (long i = 0; ; i++) {
+            BackendService.Product product = products.get(random.nextInt(products.size()));
+            if (i % 8 == 0 || orderIds.isEmpty()) {
+                BackendService.Order order = service.createOrder("Customer " + random.nextInt(50_000),
+                    List.of(new BackendService.OrderItem(product.getId(), 1)));
+                orderIds.add(order.getId());
+                written += 2;
+            } else if (i % 2 == 0) {
+                long id = orderIds.get(random.nextInt(orderIds.size()));
+                service.updateOrderStatus(id, BackendService.OrderStatus.values()[random.nextInt(3)]);
+                written++;
+            } else if (product.getQuantity() > 1000) {
+                service.reduceProductStock(product.getId(), 1);
+                written++;
+            } else {
+                service.updateProduct(product.getId(), null, null, 1_000_000);
+                written++;
+            }
+            if (written >= nextReport) {
+                System.out.println("written " + written);
+                System.out.flush();
+                nextReport += PROGRESS_EVERY;
+            }
+        }
+    }
+
+    private static void boot() {
+        long started = System.nanoTime();
+        BackendService service = BackendService.getInstance();
+        long millis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        RecoveryStats stats = service.getRecoveryStats();
+        System.out.println("ready " + millis + " " + stats.getRecords() + " " + stats.getRecordsPerSecond()
+            + " " + stats.getDiscardedBytes() + " " + service.getTotalProducts() + " " + service.getTotalOrders());
+        System.exit(0);
+    }
+
+    /** Appends a frame header that promises more payload than follows, as a write cut short would. */
+    private static void tearTail(Path dir) throws IOException {
+        Path newest = logSegments(dir).stream().max(Comparator.comparing(Path::toString)).orElse(null);
+        if (newest == null) {
+            return;
+        }
+        try (FileChannel log = FileChannel.open(newest, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            ByteBuffer frame = ByteBuffer.allocate(20);
+            frame.putInt(4096).putInt(0x5EED).put(new byte[12]).flip();
+            log.write(frame);
+        }
+    }
+
+    private static long logBytes(Path dir) throws IOException {
+        long total = 0;
+        for (Path segment : logSegments(dir)) {
+            total += Files.size(segment);
+        }
+        return total;
+    }
+
+    private static List<Path> logSegments(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            return files.filter(p -> {
+                String name = p.getFileName().toString();
+                return name.startsWith("wal-") && name.endsWith(".log");
+            }).collect(Collectors.toList());
+        }
+    }
+
+    private static void delete(Path dir) throws IOException {
+        try (Stream<Path> files = Files.walk(dir)) {
+            for (Path path : files.sorted(Comparator.reverseOrder()).collect(Collectors.toList())) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package SadSystem;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * What a storage engine replayed from its write-ahead log at startup:
+ * log entries (one per committed {@link WriteBatch}), the records in them,
+ * the replay threads, the time taken and the bytes of torn tail cut off
+ * after a crash. A fresh or fully checkpointed store reports zero entries.
+ */
+public class RecoveryStats {
+
+    public static final RecoveryStats NONE = new RecoveryStats(0, 0, 1, 0, 0);
+
+    private final long entries;
+    private final long records;
+    private final int threads;
+    private final long nanos;
+    private final long discardedBytes;
+
+    public RecoveryStats(long entries, long records, int threads, long nanos, long discardedBytes) {
+        this.entries = entries;
+        this.records = records;
+        this.threads = threads;
+        this.nanos = nanos;
+        this.discardedBytes = discardedBytes;
+    }
+
+    public long getEntries() { return entries; }
+
+    public long getRecords() { return records; }
+
+    public int getThreads() { return threads; }
+
+    public long getMillis() { return TimeUnit.NANOSECONDS.toMillis(nanos); }
+
+    /** Bytes of a torn write cut off the end of the log; non-zero after a crash mid-write. */
+    public long getDiscardedBytes() { return discardedBytes; }
+
+    /** These stats with {@code bytes} more of torn tail, cut off another file at startup. */
+    public RecoveryStats plusDiscarded(long bytes) {
+        return bytes == 0 ? this : new RecoveryStats(entries, records, threads, nanos, discardedBytes + bytes);
+    }
+
+    public long getRecordsPerSecond() {
+        return nanos == 0 ? 0 : (long) (records * 1e9 / nanos);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("replayed %,d records in %,d log entries on %d thread%s in %,d ms (%,d records/s)%s",
+            records, entries, threads, threads == 1 ? "" : "s", getMillis(), getRecordsPerSecond(),
+            discardedBytes == 0 ? "" : String.format(", discarded %,d bytes of torn tail", discardedBytes));
+    }
+}
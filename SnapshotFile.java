@@ -0,0 +1,217 @@
+package SadSystem;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Point-in-time image of users, products and orders, tagged with the
+ * write-ahead log position it covers. The layout is a flat sequence of
+ * fixed-width fields and length-prefixed UTF-8 strings followed by a
+ * CRC32 of everything before it, so {@link #load} can decode it straight
+ * out of a memory-mapped buffer. Customer names are stored once in a
+ * dictionary and orders refer to them by index; order status is the
+ * stable {@link DomainCodec} code, not the enum ordinal.
+ *
+ * A snapshot is written to a temporary file, forced and then renamed over
+ * the previous one, so a crash mid-write leaves the old snapshot intact.
+ */
+public class SnapshotFile {
+
+    private static final int MAGIC = 0x494D5353;
+    private static final int VERSION = 1;
+
+    public static class Contents {
+        final long walPosition;
+        final List<BackendService.User> users;
+        final List<BackendService.Product> products;
+        final BackendService.Order[] orders;
+        final BackendService.OrderStatus[] statuses;
+
+        Contents(long walPosition, List<BackendService.User> users, List<BackendService.Product> products,
+                 BackendService.Order[] orders, BackendService.OrderStatus[] statuses) {
+            this.walPosition = walPosition;
+            this.users = users;
+            this.products = products;
+            this.orders = orders;
+            this.statuses = statuses;
+        }
+    }
+
+    public static void write(Path file, Contents contents) throws IOException {
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.CREATE,
+                StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            CheckedOutputStream checked = new CheckedOutputStream(
+                new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16), new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(contents.walPosition);
+
+            out.writeInt(contents.users.size());
+            for (BackendService.User user : contents.users) {
+                writeString(out, user.getUsername());
+                writeString(out, user.getPassword());
+                writeString(out, user.getEmail());
+                writeString(out, user.getPhone());
+            }
+
+            out.writeInt(contents.products.size());
+            for (BackendService.Product product : contents.products) {
+                out.writeInt(product.getId());
+                writeString(out, product.getName());
+                out.writeDouble(product.getPrice());
+                out.writeInt(product.getQuantity());
+                out.writeInt(product.getReorderThreshold());
+            }
+
+            Map<String, Integer> customerNames = new LinkedHashMap<>();
+            for (BackendService.Order order : contents.orders) {
+                customerNames.putIfAbsent(order.getCustomerName(), customerNames.size());
+            }
+            out.writeInt(customerNames.size());
+            for (String customerName : customerNames.keySet()) {
+                writeString(out, customerName);
+            }
+
+            out.writeInt(contents.orders.length);
+            for (int i = 0; i < contents.orders.length; i++) {
+                BackendService.Order order = contents.orders[i];
+                out.writeLong(order.getId());
+                out.writeInt(customerNames.get(order.getCustomerName()));
+                out.writeLong(order.getDate().getTime());
+                out.writeByte(DomainCodec.statusCode(contents.statuses[i]));
+                List<BackendService.OrderItem> items = order.getItems();
+                out.writeInt(items.size());
+                for (BackendService.OrderItem item : items) {
+                    out.writeInt(item.getProductId());
+                    out.writeInt(item.getQuantity());
+                    out.writeDouble(item.getUnitPrice());
+                }
+            }
+            out.flush();
+            out.writeInt((int) checked.getChecksum().getValue());
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /** Maps and decodes the snapshot, or returns null if there is none. */
+    public static Contents load(Path file) throws IOException {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (map.limit() < 20 || map.getInt(0) != MAGIC) {
+                throw new IOException("Not a snapshot: " + file);
+            }
+            if (map.getInt(4) != VERSION) {
+                throw new IOException("Unsupported snapshot version " + map.getInt(4));
+            }
+            CRC32 crc = new CRC32();
+            crc.update(map.duplicate().limit(map.limit() - 4));
+            if ((int) crc.getValue() != map.getInt(map.limit() - 4)) {
+                throw new IOException("Snapshot checksum mismatch: " + file);
+            }
+
+            return decode(map.position(8).limit(map.limit() - 4), file);
+        }
+    }
+
+    /** Decodes past the header; a record that does not fit the layout is a format error. */
+    private static Contents decode(ByteBuffer in, Path file) throws IOException {
+        try {
+            long walPosition = in.getLong();
+
+            int userCount = in.getInt();
+            List<BackendService.User> users = new ArrayList<>(userCount);
+            for (int i = 0; i < userCount; i++) {
+                BackendService.User user = new BackendService.User(readString(in), readString(in), readString(in));
+                user.setPhone(readString(in));
+                users.add(user);
+            }
+
+            int productCount = in.getInt();
+            List<BackendService.Product> products = new ArrayList<>(productCount);
+            for (int i = 0; i < productCount; i++) {
+                BackendService.Product product = new BackendService.Product(in.getInt(), readString(in),
+                    in.getDouble(), in.getInt());
+                product.setReorderThreshold(in.getInt());
+                products.add(product);
+            }
+
+            String[] customerNames = new String[in.getInt()];
+            for (int i = 0; i < customerNames.length; i++) {
+                customerNames[i] = readString(in);
+            }
+
+            int orderCount = in.getInt();
+            BackendService.Order[] orders = new BackendService.Order[orderCount];
+            BackendService.OrderStatus[] statuses = new BackendService.OrderStatus[orderCount];
+            for (int i = 0; i < orderCount; i++) {
+                long id = in.getLong();
+                String customerName = customerNames[in.getInt()];
+                long time = in.getLong();
+                int code = in.get();
+                if (!DomainCodec.isStatusCode(code)) {
+                    throw new IOException("Unknown order status code " + code + " in snapshot " + file);
+                }
+                statuses[i] = DomainCodec.statusOf(code);
+                int itemCount = in.getInt();
+                List<BackendService.OrderItem> items = new ArrayList<>(itemCount);
+                for (int j = 0; j < itemCount; j++) {
+                    items.add(new BackendService.OrderItem(in.getInt(), in.getInt(), in.getDouble()));
+                }
+                orders[i] = new BackendService.Order(id, customerName, items, new Date(time), statuses[i]);
+            }
+            if (in.hasRemaining()) {
+                throw new IOException("Trailing bytes in snapshot " + file);
+            }
+            return new Contents(walPosition, users, products, orders, statuses);
+        } catch (BufferUnderflowException | IndexOutOfBoundsException | IllegalArgumentException
+                 | NegativeArraySizeException e) {
+            throw new IOException("Malformed snapshot " + file, e);
+        }
+    }
+
+    private static void writeString(DataOutputStream out, String value) throws IOException {
+        if (value == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(ByteBuffer in) {
+        int length = in.getInt();
+        if (length < 0) {
+            return null;
+        }
+        byte[] bytes = new byte[length];
+        in.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,72 @@
+package SadSystem;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Durable home of users, products and orders beneath BackendService.
+ * BackendService keeps its own in-memory indexes for queries; the engine
+ * is the system of record it loads them from at startup and writes every
+ * change through to.
+ *
+ * {@link #write} is called while the caller still holds the domain lock
+ * that ordered the change, so it must be quick; {@link #sync} is called
+ * after the lock is released and waits for durability as the
+ * {@code ims.durability} mode demands.
+ *
+ * {@link #open} picks the engine named by {@code ims.storage}:
+ * {@code memory} (the default) keeps everything on the heap behind a
+ * write-ahead log and snapshots, {@code lsm} keeps sorted runs on disk.
+ */
+public interface StorageEngine extends Closeable {
+
+    UserRepository users();
+
+    ProductRepository products();
+
+    OrderRepository orders();
+
+    /** Applies every record of the batch atomically. */
+    void write(WriteBatch batch);
+
+    /** What startup replayed from the write-ahead log. */
+    RecoveryStats recoveryStats();
+
+    /** Waits until the calling thread's last write is durable. */
+    void sync();
+
+    /**
+     * Folds the log into the engine's long-term files (a snapshot, or a
+     * flushed run) so recovery has less to replay. Returns false if
+     * nothing was done, e.g. because one is already running. If writing
+     * them fails, here or in the background, the call throws and every
+     * later {@link #write} fails with the same error.
+     */
+    boolean checkpoint();
+
+    @Override
+    void close();
+
+    static StorageEngine open(Path dir) {
+        String name = System.getProperty("ims.storage", "memory").trim().toLowerCase(Locale.ROOT);
+        WriteAheadLog.Durability durability = WriteAheadLog.Durability.parse(System.getProperty("ims.durability"));
+        long lingerMillis = Long.getLong("ims.wal.lingerMillis", 2);
+        try {
+            Files.createDirectories(dir);
+            switch (name) {
+                case "memory":
+                    return MemoryStorageEngine.open(dir, durability, lingerMillis);
+                case "lsm":
+                    return LsmStorageEngine.open(dir, durability, lingerMillis);
+                default:
+                    throw new IllegalArgumentException("Unknown storage engine \"" + name + "\"");
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot open " + name + " storage in " + dir, e);
+        }
+    }
+}
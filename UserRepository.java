@@ -0,0 +1,12 @@
+package SadSystem;
+
+import java.util.function.Consumer;
+
+/**
+ * Read access to the users a {@link StorageEngine} holds. Changes go
+ * through {@link WriteBatch} so they can be grouped with other records.
+ */
+public interface UserRepository {
+
+    void forEach(Consumer<BackendService.User> action);
+}
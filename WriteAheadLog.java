@@ -0,0 +1,416 @@
+package SadSystem;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only log of opaque entries. Every entry is framed as
+ * {@code [length][crc32][payload]}, so a torn write at the end of the log is
+ * detected and cut off on the next {@link #replay}.
+ *
+ * Appends only copy the frame into a pending buffer. A single writer thread
+ * drains the buffer with one write and one fsync, so every append that
+ * arrived while the previous fsync was running shares the next one (group
+ * commit). Callers append while they still hold their own locks, which
+ * keeps the log in apply order, and call {@link #sync} after releasing
+ * them to wait for durability as the {@link Durability} mode demands.
+ *
+ * Positions are logical byte offsets that keep growing across segment
+ * files. Each segment is named after the position of its first byte;
+ * {@link #roll} starts a new one and {@link #truncateBefore} deletes the
+ * segments a checkpoint has made redundant.
+ */
+public class WriteAheadLog implements Closeable {
+
+    public enum Durability {
+        /** Every mutation waits for its fsync; concurrent mutations share one. */
+        PER_OP,
+        /** Like PER_OP, but the writer lingers briefly to gather larger batches. */
+        BATCHED,
+        /** Mutations never wait; the writer fsyncs in the background. */
+        ASYNC;
+
+        public static Durability parse(String value) {
+            if (value == null || value.trim().isEmpty()) {
+                return PER_OP;
+            }
+            return valueOf(value.trim().toUpperCase(Locale.ROOT).replace('-', '_'));
+        }
+    }
+
+    private static final int FRAME_HEADER = 8;
+    private static final int MAX_PENDING = 8 << 20;
+    private static final String SEGMENT_PREFIX = "wal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+
+    private final Path dir;
+    private final Durability durability;
+    private final long lingerNanos;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition hasPending = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final ThreadLocal<long[]> lastAppend = ThreadLocal.withInitial(() -> new long[1]);
+    private FileChannel channel;
+    private long segmentStart;
+    private byte[] pending = new byte[64 * 1024];
+    private int pendingSize;
+    private long appended;
+    private long durable;
+    private boolean rollRequested;
+    private IOException failure;
+    private boolean closed;
+    private Thread writer;
+
+    public WriteAheadLog(Path dir, Durability durability, long lingerMillis) {
+        this.dir = dir;
+        this.durability = durability;
+        this.lingerNanos = durability == Durability.PER_OP ? 0 : TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+    }
+
+    /**
+     * Hands every intact entry at or after {@code from} to {@code handler} in
+     * log order, cuts a torn tail off the last segment and opens the log for
+     * appending. Must be called once, before the first append. Returns the
+     * number of torn-tail bytes it cut off.
+     */
+    public long replay(long from, Consumer<byte[]> handler) throws IOException {
+        List<Path> segments = listSegments();
+        long discarded = 0;
+        long end = from;
+        CRC32 crc = new CRC32();
+        for (int i = 0; i < segments.size(); i++) {
+            Path segment = segments.get(i);
+            boolean last = i == segments.size() - 1;
+            long start = startOf(segment);
+            if (!last && startOf(segments.get(i + 1)) <= from) {
+                continue;
+            }
+            try (FileChannel in = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                long size = in.size();
+                long valid = 0;
+                DataInputStream data = new DataInputStream(new BufferedInputStream(Channels.newInputStream(in), 1 << 16));
+                while (valid + FRAME_HEADER <= size) {
+                    int length;
+                    int checksum;
+                    byte[] payload;
+                    try {
+                        length = data.readInt();
+                        checksum = data.readInt();
+                        if (length < 0 || valid + FRAME_HEADER + length > size) {
+                            break;
+                        }
+                        payload = new byte[length];
+                        data.readFully(payload);
+                    } catch (EOFException e) {
+                        break;
+                    }
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                    if (start + valid >= from) {
+                        handler.accept(payload);
+                    }
+                    valid += FRAME_HEADER + length;
+                }
+                if (valid < size) {
+                    if (!last) {
+                        throw new IOException("Corrupt write-ahead log segment " + segment);
+                    }
+                    discarded += size - valid;
+                    in.truncate(valid);
+                    in.force(true);
+                }
+                end = Math.max(end, start + valid);
+            }
+        }
+
+        lock.lock();
+        try {
+            if (!segments.isEmpty() && startOf(segments.get(segments.size() - 1)) + Files.size(segments.get(segments.size() - 1)) == end) {
+                segmentStart = startOf(segments.get(segments.size() - 1));
+            } else {
+                // Nothing on disk reaches the checkpoint; continue in a fresh segment at its position.
+                segmentStart = end;
+            }
+            channel = FileChannel.open(segmentPath(segmentStart), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+            appended = end;
+            durable = end;
+        } finally {
+            lock.unlock();
+        }
+        return discarded;
+    }
+
+    /**
+     * Queues one entry and returns the log position that has to become
+     * durable for it. Blocks only if the writer has fallen far behind.
+     */
+    public long append(byte[] payload) {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        int frame = FRAME_HEADER + payload.length;
+        long position;
+        lock.lock();
+        try {
+            startWriter();
+            while (pendingSize > MAX_PENDING && failure == null && !closed) {
+                flushed.awaitUninterruptibly();
+            }
+            checkOpen();
+            if (pendingSize + frame > pending.length) {
+                pending = Arrays.copyOf(pending, Math.max(pending.length << 1, pendingSize + frame));
+            }
+            ByteBuffer.wrap(pending, pendingSize, frame)
+                .putInt(payload.length)
+                .putInt((int) crc.getValue())
+                .put(payload);
+            pendingSize += frame;
+            appended += frame;
+            position = appended;
+            hasPending.signal();
+        } finally {
+            lock.unlock();
+        }
+        lastAppend.get()[0] = position;
+        return position;
+    }
+
+    /**
+     * Waits until the calling thread's last append is durable, unless the
+     * log runs in ASYNC mode.
+     */
+    public void sync() {
+        if (durability != Durability.ASYNC) {
+            awaitDurable(lastAppend.get()[0]);
+        }
+    }
+
+    public void awaitDurable(long position) {
+        lock.lock();
+        try {
+            while (durable < position) {
+                if (failure != null) {
+                    throw new UncheckedIOException("Write-ahead log failed", failure);
+                }
+                flushed.awaitUninterruptibly();
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Position just past the last appended entry. */
+    public long position() {
+        lock.lock();
+        try {
+            return appended;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Asks the writer to continue in a new segment after its current batch. */
+    public void roll() {
+        lock.lock();
+        try {
+            startWriter();
+            rollRequested = true;
+            hasPending.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Deletes every segment that lies entirely before {@code position}. The
+     * segment being written is never deleted.
+     */
+    public void truncateBefore(long position) throws IOException {
+        List<Path> segments = listSegments();
+        for (int i = 0; i + 1 < segments.size(); i++) {
+            if (startOf(segments.get(i + 1)) <= position) {
+                Files.deleteIfExists(segments.get(i));
+            }
+        }
+    }
+
+    /**
+     * Flushes everything appended so far and stops the writer. Throws if
+     * the log could not be closed or a flush had failed, in which case the
+     * entries after the failure are not durable.
+     */
+    @Override
+    public void close() {
+        Thread running;
+        lock.lock();
+        try {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            running = writer;
+            hasPending.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            if (running != null) {
+                running.join();
+            }
+            if (channel != null) {
+                channel.close();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Cannot close write-ahead log", e);
+        }
+        lock.lock();
+        try {
+            if (failure != null) {
+                throw new UncheckedIOException("Write-ahead log failed", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void checkOpen() {
+        if (failure != null) {
+            throw new UncheckedIOException("Write-ahead log failed", failure);
+        }
+        if (closed) {
+            throw new IllegalStateException("Write-ahead log is closed");
+        }
+        if (channel == null) {
+            throw new IllegalStateException("Write-ahead log has not been replayed");
+        }
+    }
+
+    private void startWriter() {
+        if (writer == null) {
+            writer = new Thread(this::writeLoop, "wal-writer");
+            writer.setDaemon(true);
+            writer.start();
+        }
+    }
+
+    private void writeLoop() {
+        byte[] spare = new byte[pending.length];
+        long written;
+        lock.lock();
+        try {
+            written = durable;
+        } finally {
+            lock.unlock();
+        }
+        while (true) {
+            byte[] batch;
+            int batchSize;
+            boolean roll;
+            lock.lock();
+            try {
+                while (pendingSize == 0 && !rollRequested && !closed) {
+                    hasPending.awaitUninterruptibly();
+                }
+                if (pendingSize == 0 && !rollRequested) {
+                    return;
+                }
+            } finally {
+                lock.unlock();
+            }
+            if (lingerNanos > 0) {
+                LockSupport.parkNanos(lingerNanos);
+            }
+            lock.lock();
+            try {
+                batch = pending;
+                batchSize = pendingSize;
+                pending = spare.length >= batch.length ? spare : new byte[batch.length];
+                pendingSize = 0;
+                roll = rollRequested;
+                rollRequested = false;
+            } finally {
+                lock.unlock();
+            }
+
+            try {
+                ByteBuffer buffer = ByteBuffer.wrap(batch, 0, batchSize);
+                while (buffer.hasRemaining()) {
+                    written += channel.write(buffer, written - segmentStart);
+                }
+                channel.force(false);
+                if (roll && written > segmentStart) {
+                    channel.close();
+                    segmentStart = written;
+                    channel = FileChannel.open(segmentPath(segmentStart), StandardOpenOption.CREATE,
+                        StandardOpenOption.READ, StandardOpenOption.WRITE);
+                }
+            } catch (IOException e) {
+                // Committers waiting in awaitDurable, and every later append, get the failure.
+                lock.lock();
+                try {
+                    failure = e;
+                    flushed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+                return;
+            }
+
+            lock.lock();
+            try {
+                durable = written;
+                spare = batch;
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private Path segmentPath(long start) {
+        return dir.resolve(String.format("%s%016x%s", SEGMENT_PREFIX, start, SEGMENT_SUFFIX));
+    }
+
+    private List<Path> listSegments() throws IOException {
+        List<Path> segments = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(dir, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path segment : stream) {
+                segments.add(segment);
+            }
+        }
+        segments.sort((a, b) -> Long.compareUnsigned(startOf(a), startOf(b)));
+        return segments;
+    }
+
+    private static long startOf(Path segment) {
+        String name = segment.getFileName().toString();
+        return Long.parseUnsignedLong(name.substring(SEGMENT_PREFIX.length(),
+            name.length() - SEGMENT_SUFFIX.length()), 16);
+    }
+}
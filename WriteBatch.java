@@ -0,0 +1,187 @@
+package SadSystem;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A group of changes that a {@link StorageEngine} applies together or not
+ * at all (an order and the stock it reserved, say). Records carry full
+ * state where possible so applying one twice is harmless; stock movements
+ * are deltas because concurrent orders on one product are only ordered by
+ * the engine.
+ *
+ * The encoded form is what goes into the write-ahead log. Orders are
+ * additionally kept as the live objects that were recorded, so an engine
+ * that holds orders in memory can share them instead of decoding a copy.
+ */
+public class WriteBatch {
+
+    /** Receives the records of a batch in the order they were added. */
+    public interface Handler {
+        void user(String previousName, BackendService.User user);
+
+        void product(BackendService.Product product);
+
+        void productDeleted(int productId);
+
+        void stock(int productId, int delta);
+
+        void order(BackendService.Order order);
+
+        void orderStatus(long orderId, BackendService.OrderStatus status);
+
+        void orderDeleted(long orderId);
+    }
+
+    private static final byte USER = 1;
+    private static final byte PRODUCT = 2;
+    private static final byte PRODUCT_DELETE = 3;
+    private static final byte STOCK = 4;
+    private static final byte ORDER = 5;
+    private static final byte ORDER_STATUS = 6;
+    private static final byte ORDER_DELETE = 7;
+
+    private final DomainCodec.Writer out = new DomainCodec.Writer();
+    private final List<BackendService.Order> orders = new ArrayList<>();
+    private int records;
+    private int userRecords;
+
+    public WriteBatch() {
+        out.writeByte(DomainCodec.VERSION);
+    }
+
+    public WriteBatch user(String previousName, BackendService.User user) {
+        out.writeByte(USER).writeString(previousName);
+        DomainCodec.writeUser(out, user);
+        records++;
+        userRecords++;
+        return this;
+    }
+
+    public WriteBatch product(BackendService.Product product) {
+        out.writeByte(PRODUCT);
+        DomainCodec.writeProduct(out, product);
+        records++;
+        return this;
+    }
+
+    public WriteBatch productDeleted(int productId) {
+        out.writeByte(PRODUCT_DELETE).writeVarint(productId);
+        records++;
+        return this;
+    }
+
+    public WriteBatch stock(int productId, int delta) {
+        out.writeByte(STOCK).writeVarint(productId).writeZigZag(delta);
+        records++;
+        return this;
+    }
+
+    public WriteBatch stock(Map<BackendService.Product, Integer> quantities, int sign) {
+        for (Map.Entry<BackendService.Product, Integer> line : quantities.entrySet()) {
+            stock(line.getKey().getId(), sign * line.getValue());
+        }
+        return this;
+    }
+
+    public WriteBatch order(BackendService.Order order) {
+        out.writeByte(ORDER);
+        DomainCodec.writeOrder(out, order);
+        orders.add(order);
+        records++;
+        return this;
+    }
+
+    public WriteBatch orderStatus(long orderId, BackendService.OrderStatus status) {
+        out.writeByte(ORDER_STATUS).writeVarint(orderId).writeVarint(DomainCodec.statusCode(status));
+        records++;
+        return this;
+    }
+
+    public WriteBatch orderDeleted(long orderId) {
+        out.writeByte(ORDER_DELETE).writeVarint(orderId);
+        records++;
+        return this;
+    }
+
+    public boolean isEmpty() {
+        return records == 0;
+    }
+
+    /** Records other than users; the change feed turns each into one event. */
+    int catalogAndOrderRecords() {
+        return records - userRecords;
+    }
+
+    public byte[] toByteArray() {
+        return out.toByteArray();
+    }
+
+    /**
+     * Hands the records to {@code handler}. Users and products are decoded
+     * into fresh objects; orders are the objects that were recorded.
+     */
+    public void replay(Handler handler) {
+        decode(out.buffer(), handler, orders);
+    }
+
+    /**
+     * Decodes a batch read back from a log or other storage. Returns the
+     * number of records it held.
+     */
+    public static int decode(byte[] payload, Handler handler) {
+        return decode(ByteBuffer.wrap(payload), handler, null);
+    }
+
+    private static int decode(ByteBuffer in, Handler handler, List<BackendService.Order> liveOrders) {
+        int version = in.get();
+        if (version != DomainCodec.VERSION) {
+            throw new IllegalStateException("Unsupported write batch version " + version);
+        }
+        int nextOrder = 0;
+        int count = 0;
+        while (in.hasRemaining()) {
+            byte type = in.get();
+            count++;
+            switch (type) {
+                case USER: {
+                    String previousName = DomainCodec.readString(in);
+                    handler.user(previousName, DomainCodec.readUser(in));
+                    break;
+                }
+                case PRODUCT:
+                    handler.product(DomainCodec.readProduct(in));
+                    break;
+                case PRODUCT_DELETE:
+                    handler.productDeleted((int) DomainCodec.readVarint(in));
+                    break;
+                case STOCK: {
+                    int productId = (int) DomainCodec.readVarint(in);
+                    handler.stock(productId, (int) DomainCodec.readZigZag(in));
+                    break;
+                }
+                case ORDER:
+                    if (liveOrders != null) {
+                        DomainCodec.skipMessage(in);
+                        handler.order(liveOrders.get(nextOrder++));
+                    } else {
+                        handler.order(DomainCodec.readOrder(in));
+                    }
+                    break;
+                case ORDER_STATUS: {
+                    long orderId = DomainCodec.readVarint(in);
+                    handler.orderStatus(orderId, DomainCodec.statusOf((int) DomainCodec.readVarint(in)));
+                    break;
+                }
+                case ORDER_DELETE:
+                    handler.orderDeleted(DomainCodec.readVarint(in));
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown write batch record " + type);
+            }
+        }
+        return count;
+    }
+}
@@ -9,7 +9,6 @@ public class signup extends JFrame {
     private JPasswordField passwordField;
     private JTextField emailField;
     private JButton signUpButton;
-    private BackendService backend;
 
     public signup() {
         super("Inventory System - Sign Up");
@@ -18,8 +17,6 @@ public class signup extends JFrame {
         setLocationRelativeTo(null);
         setIconImage(new ImageIcon("logo/Inventory.png").getImage());
 
-        backend = BackendService.getInstance();
-
         GradientPanel bg = new GradientPanel(new Color(102, 78, 255), new Color(72, 149, 239));
         bg.setLayout(new GridBagLayout());
         setContentPane(bg);
@@ -99,27 +96,29 @@ public class signup extends JFrame {
 
         signUpButton.setEnabled(false);
 
-        new Thread(() -> {
-            boolean success = backend.registerUser(username, password, email);
-
-            SwingUtilities.invokeLater(() -> {
-                if (success) {
-                    JOptionPane.showMessageDialog(signup.this,
-                            "Account created successfully. You can now log in.",
-                            "Success",
-                            JOptionPane.INFORMATION_MESSAGE);
-                    dispose();
-                    Login login = new Login();
-                    login.setVisible(true);
-                } else {
-                    JOptionPane.showMessageDialog(signup.this,
-                            "Failed to create account. Check that username, password and email are valid and not already used.",
-                            "Sign Up Failed",
-                            JOptionPane.ERROR_MESSAGE);
-                    signUpButton.setEnabled(true);
-                }
-            });
-        }).start();
+        AsyncBackend.getInstance().call(b -> b.registerUser(username, password, email)).whenComplete((success, error) -> {
+            if (error != null) {
+                JOptionPane.showMessageDialog(signup.this,
+                        "Could not create account: " + error.getMessage(),
+                        "Sign Up Failed",
+                        JOptionPane.ERROR_MESSAGE);
+                signUpButton.setEnabled(true);
+            } else if (success) {
+                JOptionPane.showMessageDialog(signup.this,
+                        "Account created successfully. You can now log in.",
+                        "Success",
+                        JOptionPane.INFORMATION_MESSAGE);
+                dispose();
+                Login login = new Login();
+                login.setVisible(true);
+            } else {
+                JOptionPane.showMessageDialog(signup.this,
+                        "Failed to create account. Check that username, password and email are valid and not already used.",
+                        "Sign Up Failed",
+                        JOptionPane.ERROR_MESSAGE);
+                signUpButton.setEnabled(true);
+            }
+        });
     }
 
     private void stylePrimaryButton(JButton button) {